@@ -25,7 +25,7 @@
 -dontwarn okhttp3.**
 -dontwarn okio.**
 
-# Gson (VisualIndicator JSON parsing)
+# Gson (probe response streaming parser)
 -keep class com.google.gson.** { *; }
 -dontwarn com.google.gson.**
 -keep class de.hdodenhof.circleimageview.** { *; }
@@ -50,14 +50,19 @@ import androidx.webkit.WebViewFeature;
 
 import com.doubleangels.nextdnsmanagement.biometriclock.BiometricLock;
 import com.doubleangels.nextdnsmanagement.firebasemessaging.MessagingInitializer;
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
 import com.doubleangels.nextdnsmanagement.protocol.VisualIndicator;
 import com.doubleangels.nextdnsmanagement.sentry.SentryInitializer;
 import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
 import com.doubleangels.nextdnsmanagement.utils.ExternalLinkHandler;
 import com.doubleangels.nextdnsmanagement.utils.InsetsHelper;
+import com.doubleangels.nextdnsmanagement.utils.StartupMetrics;
 import com.doubleangels.nextdnsmanagement.sharedpreferences.SharedPreferencesManager;
+import com.doubleangels.nextdnsmanagement.webview.DashboardSnapshot;
+import com.doubleangels.nextdnsmanagement.webview.StaticAssetInterceptor;
 import com.doubleangels.nextdnsmanagement.webview.WebAppInterface;
 import com.doubleangels.nextdnsmanagement.webview.WebDownloadHelper;
+import com.doubleangels.nextdnsmanagement.webview.WebViewCachePolicy;
 import com.doubleangels.nextdnsmanagement.webview.WebViewInteractionScript;
 import com.doubleangels.nextdnsmanagement.webview.WebViewLayoutHelper;
 
@@ -96,6 +101,18 @@ public class MainActivity extends BaseActivity {
     // Blur overlay view to hide content during biometric authentication
     private View blurOverlay;
     private View webViewErrorView;
+    // Whether the layout WebView holds the blank warm-up page in its history
+    private boolean webViewPrewarmed = false;
+    // Serves the dashboard's fingerprinted assets from a disk cache that outlives the WebView's
+    private StaticAssetInterceptor staticAssetInterceptor;
+    // Decides what the WebView leaves behind when it is torn down
+    private WebViewCachePolicy webViewCachePolicy;
+    // Last rendered dashboard, shown on cold start until the live page finishes
+    private DashboardSnapshot dashboardSnapshot;
+    // Whether the WebView shows a fully loaded NextDNS page worth snapshotting
+    private boolean dashboardPageLoaded = false;
+    // Whether the interaction script runs at document start instead of after each page
+    private boolean interactionScriptAtDocumentStart = false;
     // SentryManager instance for error logging
     private SentryManager sentryManager;
 
@@ -136,6 +153,14 @@ public class MainActivity extends BaseActivity {
         if (savedInstanceState != null) {
             darkModeEnabled = savedInstanceState.getBoolean("darkModeEnabled");
         }
+        sentryManager = new SentryManager(this);
+        staticAssetInterceptor = new StaticAssetInterceptor(this);
+        webViewCachePolicy = new WebViewCachePolicy(this);
+
+        // Start decrypting preferences before inflating the layout, which loads
+        // the WebView provider on this thread, so the two overlap. The callback
+        // is posted, so it never runs before onCreate returns.
+        AppStartupHelper.initializePreferencesAsync(this, splashScreen, this::finishStartup);
         setContentView(R.layout.activity_main);
 
         // Enable hardware acceleration programmatically
@@ -146,10 +171,13 @@ public class MainActivity extends BaseActivity {
         // Initialize blur overlay
         blurOverlay = findViewById(R.id.blurOverlay);
         webViewErrorView = findViewById(R.id.webViewErrorView);
+        dashboardSnapshot = new DashboardSnapshot(this, findViewById(R.id.dashboardSnapshot));
+        if (savedInstanceState == null) {
+            // Decrypt in parallel with preferences; it is revealed once app lock is known to be off.
+            dashboardSnapshot.load();
+        }
 
-        sentryManager = new SentryManager(this);
-
-        AppStartupHelper.initializePreferencesAsync(this, splashScreen, this::finishStartup);
+        webViewPrewarmed = WebViewLayoutHelper.startRenderer(findViewById(R.id.webView));
     }
 
     private void finishStartup() {
@@ -206,17 +234,18 @@ public class MainActivity extends BaseActivity {
         } catch (Exception e) {
             sentryManager.captureException(e);
         }
-        SwipeRefreshLayout refreshLayout = findViewById(R.id.swipeRefreshLayout);
-        if (refreshLayout != null) {
-            refreshLayout.post(() -> {
-                if (!isFinishing()) {
-                    try {
-                        setupWebViewForActivity(getString(R.string.main_url));
-                    } catch (Exception e) {
-                        sentryManager.captureException(e);
-                    }
-                }
-            });
+        if (SharedPreferencesManager.getBoolean("app_lock_enable", false)) {
+            dashboardSnapshot.discard();
+        } else {
+            dashboardSnapshot.reveal();
+        }
+
+        // Navigate right away rather than in a post, so the page starts loading
+        // while the splash screen is still up.
+        try {
+            setupWebViewForActivity(getString(R.string.main_url));
+        } catch (Exception e) {
+            sentryManager.captureException(e);
         }
 
         maybeShowBiometricPrompt();
@@ -243,6 +272,7 @@ public class MainActivity extends BaseActivity {
         InsetsHelper.applyStatusBarScrimHeight(statusBarScrim);
         SwipeRefreshLayout refreshLayout = findViewById(R.id.swipeRefreshLayout);
         InsetsHelper.applyBottomSystemBarPadding(refreshLayout);
+        InsetsHelper.applyBottomSystemBarPadding(findViewById(R.id.dashboardSnapshot));
     }
 
     private void persistLastAuthenticatedTime() {
@@ -259,6 +289,9 @@ public class MainActivity extends BaseActivity {
     protected void onDestroy() {
         super.onDestroy();
         try {
+            if (sentryManager != null) {
+                sentryManager.captureMessage("Web asset cache: " + HttpClients.getWebAssetCacheStats());
+            }
             // Remove WebView from its parent if attached
             if (webView != null && webView.getParent() != null) {
                 ((ViewGroup) webView.getParent()).removeView(webView);
@@ -270,10 +303,8 @@ public class MainActivity extends BaseActivity {
                 webView.setWebViewClient(new WebViewClient());
                 webView.setWebChromeClient(new WebChromeClient());
                 webView.setDownloadListener(null);
-                // Clear WebView cache and data
-                webView.clearCache(true);
-                webView.clearHistory();
-                webView.clearFormData();
+                // Keep or clear the WebView cache and data as the policy says
+                webViewCachePolicy.onWebViewDestroying(webView, webViewCachePolicy.getRetention());
                 // Destroy the WebView
                 webView.destroy();
                 webView = null;
@@ -288,6 +319,8 @@ public class MainActivity extends BaseActivity {
                 blurOverlay.clearAnimation();
                 blurOverlay = null;
             }
+            staticAssetInterceptor = null;
+            dashboardSnapshot = null;
             // Clear sentry manager reference
             sentryManager = null;
         } catch (Exception e) {
@@ -302,6 +335,7 @@ public class MainActivity extends BaseActivity {
     @Override
     protected void onPause() {
         super.onPause();
+        captureDashboardSnapshot();
         if (webView != null) {
             webView.onPause();
             webView.pauseTimers();
@@ -507,11 +541,31 @@ public class MainActivity extends BaseActivity {
                     return ExternalLinkHandler.openExternalLink(view.getContext(), view, uri);
                 }
 
+                @Override
+                public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                    StaticAssetInterceptor interceptor = staticAssetInterceptor;
+                    return interceptor != null ? interceptor.intercept(request) : null;
+                }
+
                 @Override
                 public void onPageStarted(WebView view, String pageUrl, android.graphics.Bitmap favicon) {
+                    dashboardPageLoaded = false;
                     hideWebViewError();
                 }
 
+                @Override
+                public void onPageCommitVisible(WebView view, String pageUrl) {
+                    if (!isValidNextDnsUrl(pageUrl)) {
+                        return;
+                    }
+                    StartupMetrics.mark(StartupMetrics.Milestone.FIRST_CONTENTFUL_PAINT);
+                    if (webViewPrewarmed) {
+                        // Back must not lead to the blank warm-up page.
+                        webViewPrewarmed = false;
+                        view.clearHistory();
+                    }
+                }
+
                 @Override
                 public void onPageFinished(WebView view, String pageUrl) {
                     try {
@@ -521,10 +575,17 @@ public class MainActivity extends BaseActivity {
                         }
                         if (isValidNextDnsUrl(pageUrl)) {
                             SharedPreferencesManager.putString(LAST_WEBVIEW_URL_KEY, pageUrl);
+                            dashboardPageLoaded = webViewErrorView == null
+                                    || webViewErrorView.getVisibility() != View.VISIBLE;
+                            if (dashboardSnapshot != null) {
+                                dashboardSnapshot.dismiss();
+                            }
                         }
                         CookieManager.getInstance().setAcceptCookie(true);
                         CookieManager.getInstance().acceptCookie();
-                        view.evaluateJavascript(WebViewInteractionScript.PAGE_FINISHED_SCRIPT, null);
+                        if (!interactionScriptAtDocumentStart) {
+                            view.evaluateJavascript(WebViewInteractionScript.INTERACTION_SCRIPT, null);
+                        }
                     } catch (Exception e) {
                         SentryManager.captureStaticException(e);
                     }
@@ -593,6 +654,8 @@ public class MainActivity extends BaseActivity {
             setupDownloadManagerForActivity();
             setupWebViewTouchHandling();
             hideWebViewError();
+            webViewCachePolicy.onWebViewCreated(webView);
+            interactionScriptAtDocumentStart = WebViewInteractionScript.installAtDocumentStart(webView);
             loadWebViewUrl(webView, url);
             isWebViewInitialized = true;
         } catch (Exception e) {
@@ -870,6 +933,10 @@ public class MainActivity extends BaseActivity {
     }
 
     private void showWebViewError() {
+        dashboardPageLoaded = false;
+        if (dashboardSnapshot != null) {
+            dashboardSnapshot.dismiss();
+        }
         if (webViewErrorView != null) {
             webViewErrorView.setVisibility(View.VISIBLE);
             webViewErrorView.setOnClickListener(v -> {
@@ -886,6 +953,29 @@ public class MainActivity extends BaseActivity {
         }
     }
 
+    /**
+     * Stores what the dashboard shows for the next cold start, unless app lock
+     * is enabled or the blur overlay is hiding the page.
+     */
+    private void captureDashboardSnapshot() {
+        if (webView == null || dashboardSnapshot == null || !dashboardPageLoaded
+                || !SharedPreferencesManager.isInitialized()) {
+            return;
+        }
+        if (SharedPreferencesManager.getBoolean("app_lock_enable", false)) {
+            dashboardSnapshot.discard();
+            return;
+        }
+        if (blurOverlay != null && blurOverlay.getVisibility() == View.VISIBLE) {
+            return;
+        }
+        try {
+            dashboardSnapshot.capture(getWindow(), webView);
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+    }
+
     private void hideWebViewError() {
         if (webViewErrorView != null) {
             webViewErrorView.setVisibility(View.GONE);
@@ -894,6 +984,7 @@ public class MainActivity extends BaseActivity {
 
     private void teardownWebViewForRecovery() {
         isWebViewInitialized = false;
+        interactionScriptAtDocumentStart = false;
         if (webView == null) {
             return;
         }
@@ -905,6 +996,8 @@ public class MainActivity extends BaseActivity {
             webView.setWebViewClient(new WebViewClient());
             webView.setWebChromeClient(new WebChromeClient());
             webView.setDownloadListener(null);
+            // A crashed renderer says nothing about the cache, and the session goes on.
+            webViewCachePolicy.onWebViewDestroying(webView, WebViewCachePolicy.Retention.KEEP);
             webView.destroy();
         } catch (Exception e) {
             SentryManager.captureStaticException(e);
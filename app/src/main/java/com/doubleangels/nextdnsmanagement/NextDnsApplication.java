@@ -2,9 +2,15 @@ package com.doubleangels.nextdnsmanagement;
 
 import android.app.Application;
 
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivityMonitor;
+import com.doubleangels.nextdnsmanagement.protocol.resolver.DohDns;
 import com.doubleangels.nextdnsmanagement.sentry.SentryInitializer;
 import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
 import com.doubleangels.nextdnsmanagement.sharedpreferences.SharedPreferencesManager;
+import com.doubleangels.nextdnsmanagement.utils.StartupMetrics;
+import com.doubleangels.nextdnsmanagement.watchdog.ProtectionWatchdog;
+import com.doubleangels.nextdnsmanagement.widget.StatusWidgetProvider;
 
 /**
  * Application entry point for one-time initialization.
@@ -14,15 +20,50 @@ public class NextDnsApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        // Every process start gets here, including widget, tile and watchdog
+        // wake-ups. The probe does not depend on preferences, so building the
+        // clients and probe engine runs off the main thread alongside them.
+        new Thread(() -> {
+            try {
+                ConnectivityMonitor.getInstance(getApplicationContext()).start();
+                StatusWidgetProvider.observe(getApplicationContext());
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
+            }
+        }, "connectivity-warmup").start();
         new Thread(() -> {
             try {
                 SharedPreferencesManager.init(getApplicationContext());
+                StartupMetrics.mark(StartupMetrics.Milestone.PREFERENCES_READY);
+            } catch (Exception e) {
+                // Nothing below can run without preferences; MainActivity's splash flow retries.
+                SentryManager.captureStaticException(e);
+                return;
+            }
+            try {
                 SentryManager.installFilteredUncaughtExceptionHandler();
                 if (SharedPreferencesManager.getBoolean("sentry_enable", false)) {
                     SentryInitializer.initialize(getApplicationContext());
                 }
-            } catch (Exception ignored) {
-                // MainActivity splash flow handles init failure reporting.
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
+            }
+            try {
+                if (SharedPreferencesManager.getBoolean("doh_resolver_enable", false)) {
+                    HttpClients.setAppDns(DohDns.create(getApplicationContext()));
+                }
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
+            }
+            try {
+                // Re-registers the watchdog's wake-up callback, which does not survive a reboot.
+                ProtectionWatchdog watchdog = ProtectionWatchdog.getInstance(getApplicationContext());
+                boolean watchdogEnabled = SharedPreferencesManager.getBoolean("watchdog_enable", false);
+                if (watchdogEnabled || watchdog.isEnabled()) {
+                    watchdog.setEnabled(watchdogEnabled);
+                }
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
             }
         }, "app-prefs-warmup").start();
     }
@@ -17,6 +17,7 @@ import com.doubleangels.nextdnsmanagement.sentry.SentryInitializer;
 import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
 import com.doubleangels.nextdnsmanagement.utils.ExternalLinkHandler;
 import com.doubleangels.nextdnsmanagement.utils.InsetsHelper;
+import com.doubleangels.nextdnsmanagement.webview.WebViewCachePolicy;
 import com.doubleangels.nextdnsmanagement.webview.WebViewInteractionScript;
 
 import java.util.Locale;
@@ -31,6 +32,7 @@ public class PingActivity extends BaseActivity {
     public WebView webView;
     public WebView webView2;
     private boolean webView2Initialized;
+    private WebViewCachePolicy webViewCachePolicy;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,6 +45,7 @@ public class PingActivity extends BaseActivity {
                 android.view.WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED);
 
         sentryManager = new SentryManager(this);
+        webViewCachePolicy = new WebViewCachePolicy(this);
         try {
             if (sentryManager.isEnabled()) {
                 SentryInitializer.initialize(this);
@@ -172,9 +175,7 @@ public class PingActivity extends BaseActivity {
             ((ViewGroup) targetWebView.getParent()).removeView(targetWebView);
         }
         targetWebView.setWebViewClient(new WebViewClient());
-        targetWebView.clearCache(true);
-        targetWebView.clearHistory();
-        targetWebView.clearFormData();
+        webViewCachePolicy.onWebViewDestroying(targetWebView, webViewCachePolicy.getRetention());
         targetWebView.destroy();
     }
 }
@@ -0,0 +1,104 @@
+package com.doubleangels.nextdnsmanagement;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.doubleangels.nextdnsmanagement.adaptors.ProbeHistoryAdapter;
+import com.doubleangels.nextdnsmanagement.protocol.history.ProbeHistoryEntry;
+import com.doubleangels.nextdnsmanagement.protocol.history.ProbeHistoryStore;
+import com.doubleangels.nextdnsmanagement.sentry.SentryInitializer;
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+import com.doubleangels.nextdnsmanagement.utils.InsetsHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Activity that lists recorded NextDNS probe outcomes, newest first, so it is
+ * easy to see when the device stopped resolving through NextDNS. The history is
+ * read off the main thread.
+ */
+public class ProbeHistoryActivity extends BaseActivity {
+
+    private SentryManager sentryManager;
+    private ProbeHistoryAdapter probeHistoryAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_probe_history);
+        setupInsets();
+
+        sentryManager = new SentryManager(this);
+        try {
+            if (sentryManager.isEnabled()) {
+                SentryInitializer.initialize(this);
+            }
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+
+        RecyclerView recyclerView = findViewById(R.id.probeHistoryRecyclerView);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        probeHistoryAdapter = new ProbeHistoryAdapter(new ArrayList<>());
+        recyclerView.setAdapter(probeHistoryAdapter);
+        loadHistory();
+    }
+
+    @Override
+    protected void onDestroy() {
+        RecyclerView recyclerView = findViewById(R.id.probeHistoryRecyclerView);
+        if (recyclerView != null) {
+            recyclerView.setAdapter(null);
+        }
+        probeHistoryAdapter = null;
+        if (sentryManager != null) {
+            sentryManager = null;
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    protected void attachBaseContext(Context newBase) {
+        Configuration config = newBase.getResources().getConfiguration();
+        Locale newLocale = (!config.getLocales().isEmpty()) ? config.getLocales().get(0) : Locale.getDefault();
+        Configuration overrideConfig = new Configuration(config);
+        overrideConfig.setLocale(newLocale);
+        Context localizedContext = newBase.createConfigurationContext(overrideConfig);
+        super.attachBaseContext(localizedContext);
+    }
+
+    private void loadHistory() {
+        ProbeHistoryStore store = ProbeHistoryStore.getInstance(this);
+        new Thread(() -> {
+            List<ProbeHistoryEntry> entries;
+            try {
+                entries = store.readAll();
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
+                entries = new ArrayList<>();
+            }
+            List<ProbeHistoryEntry> loaded = entries;
+            runOnUiThread(() -> {
+                if (isFinishing() || isDestroyed() || probeHistoryAdapter == null) {
+                    return;
+                }
+                probeHistoryAdapter.updateEntries(loaded);
+                findViewById(R.id.probeHistoryEmptyTextView)
+                        .setVisibility(loaded.isEmpty() ? View.VISIBLE : View.GONE);
+            });
+        }, "probe-history-load").start();
+    }
+
+    private void setupInsets() {
+        View root = findViewById(R.id.root);
+        InsetsHelper.installOnRoot(root);
+        InsetsHelper.applySystemBarPadding(root);
+    }
+}
@@ -4,6 +4,7 @@ import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.net.Uri;
 import android.os.Build;
@@ -11,19 +12,26 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
+import androidx.core.content.ContextCompat;
 import androidx.preference.ListPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.SwitchPreference;
 
 import com.doubleangels.nextdnsmanagement.biometriclock.BiometricLock;
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+import com.doubleangels.nextdnsmanagement.protocol.resolver.DohDns;
 import com.doubleangels.nextdnsmanagement.sentry.SentryInitializer;
 import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
 import com.doubleangels.nextdnsmanagement.sharedpreferences.SharedPreferencesManager;
 import com.doubleangels.nextdnsmanagement.utils.ExternalLinkHandler;
 import com.doubleangels.nextdnsmanagement.utils.InsetsHelper;
+import com.doubleangels.nextdnsmanagement.webview.DashboardSnapshot;
+import com.doubleangels.nextdnsmanagement.watchdog.ProtectionWatchdog;
 
 import java.util.Locale;
 
@@ -139,6 +147,11 @@ public class SettingsActivity extends BaseActivity {
         // Shared SentryManager instance for this fragment — avoids repeated instantiation
         private SentryManager sentryManager;
 
+        // Asks for the notification permission the watchdog needs to alert the user
+        private final ActivityResultLauncher<String> notificationPermissionLauncher =
+                registerForActivityResult(new ActivityResultContracts.RequestPermission(),
+                        this::onNotificationPermissionResult);
+
         /**
          * Called during fragment creation to initialize the preference hierarchy from
          * an XML resource.
@@ -168,6 +181,8 @@ public class SettingsActivity extends BaseActivity {
                 // Retrieve references to various preferences
                 SwitchPreference sentryEnablePreference = findPreference("sentry_enable");
                 SwitchPreference appLockPreference = findPreference("app_lock_enable");
+                SwitchPreference watchdogPreference = findPreference("watchdog_enable");
+                SwitchPreference dohResolverPreference = findPreference("doh_resolver_enable");
                 ListPreference darkModePreference = findPreference("dark_mode");
                 final BiometricLock biometricLock = new BiometricLock((AppCompatActivity) requireContext());
 
@@ -182,6 +197,12 @@ public class SettingsActivity extends BaseActivity {
                 if (appLockPreference != null) {
                     setupAppLockChangeListener(appLockPreference);
                 }
+                if (watchdogPreference != null) {
+                    setupWatchdogChangeListener(watchdogPreference);
+                }
+                if (dohResolverPreference != null) {
+                    setupDohResolverChangeListener(dohResolverPreference);
+                }
                 if (darkModePreference != null) {
                     setupDarkModeChangeListener(darkModePreference);
                 }
@@ -380,6 +401,10 @@ public class SettingsActivity extends BaseActivity {
                                         public void onAuthenticationSucceeded() {
                                             SharedPreferencesManager.putBoolean("app_lock_enable", newValueBoolean);
                                             setting.setChecked(newValueBoolean);
+                                            if (newValueBoolean) {
+                                                // A stored dashboard image would show before unlocking.
+                                                DashboardSnapshot.delete(requireContext());
+                                            }
                                             captureMessageIfAvailable(
                                                     "App lock set to " + newValueBoolean + " after biometric authentication.");
                                         }
@@ -412,6 +437,93 @@ public class SettingsActivity extends BaseActivity {
             });
         }
 
+        /**
+         * Sets up a listener to handle changes to the protection watchdog
+         * preference.
+         *
+         * @param switchPreference The watchdog switch preference.
+         */
+        private void setupWatchdogChangeListener(SwitchPreference switchPreference) {
+            switchPreference.setOnPreferenceChangeListener((preference, newValue) -> {
+                boolean isEnabled = (boolean) newValue;
+                if (isEnabled && !hasNotificationPermission()) {
+                    // The switch stays off until the permission is granted
+                    try {
+                        notificationPermissionLauncher.launch(android.Manifest.permission.POST_NOTIFICATIONS);
+                    } catch (Exception e) {
+                        sentryManager.captureException(e);
+                    }
+                    return false;
+                }
+                setWatchdogEnabled(isEnabled);
+                return true;
+            });
+        }
+
+        /**
+         * Turns the watchdog on once the notification permission has been
+         * granted, and leaves it off if the user denied it.
+         *
+         * @param granted Whether the permission was granted.
+         */
+        private void onNotificationPermissionResult(boolean granted) {
+            sentryManager.captureMessage("Notification permission for watchdog granted: " + granted + ".");
+            if (!granted) {
+                return;
+            }
+            SwitchPreference watchdogPreference = findPreference("watchdog_enable");
+            if (watchdogPreference != null) {
+                watchdogPreference.setChecked(true);
+            }
+            setWatchdogEnabled(true);
+        }
+
+        /**
+         * Checks whether the app may post the watchdog's notifications.
+         *
+         * @return True if notifications can be posted.
+         */
+        private boolean hasNotificationPermission() {
+            return Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU
+                    || ContextCompat.checkSelfPermission(requireContext(),
+                            android.Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED;
+        }
+
+        /**
+         * Stores the watchdog preference and starts or stops the watchdog.
+         *
+         * @param isEnabled Whether the watchdog should run.
+         */
+        private void setWatchdogEnabled(boolean isEnabled) {
+            try {
+                sentryManager.captureMessage("Protection watchdog set to " + isEnabled + ".");
+                SharedPreferencesManager.putBoolean("watchdog_enable", isEnabled);
+                ProtectionWatchdog.getInstance(requireContext()).setEnabled(isEnabled);
+            } catch (Exception e) {
+                sentryManager.captureException(e);
+            }
+        }
+
+        /**
+         * Sets up a listener to handle changes to the encrypted lookups
+         * preference.
+         *
+         * @param switchPreference The encrypted lookups switch preference.
+         */
+        private void setupDohResolverChangeListener(SwitchPreference switchPreference) {
+            switchPreference.setOnPreferenceChangeListener((preference, newValue) -> {
+                try {
+                    sentryManager.captureMessage("Encrypted lookups set to " + newValue.toString() + ".");
+                    boolean isEnabled = (boolean) newValue;
+                    SharedPreferencesManager.putBoolean("doh_resolver_enable", isEnabled);
+                    HttpClients.setAppDns(isEnabled ? DohDns.create(requireContext()) : null);
+                } catch (Exception e) {
+                    sentryManager.captureException(e);
+                }
+                return true;
+            });
+        }
+
         /**
          * Sets up a listener to handle changes to the Sentry preference.
          *
@@ -1,13 +1,25 @@
 package com.doubleangels.nextdnsmanagement;
 
 import android.content.Context;
+import android.content.Intent;
 import android.content.res.Configuration;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.TextView;
 
+import com.doubleangels.nextdnsmanagement.network.ProbeTimings;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivityMonitor;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivitySnapshot;
+import com.doubleangels.nextdnsmanagement.protocol.ProbeLatencyStats;
+import com.doubleangels.nextdnsmanagement.protocol.resolver.ResolverResult;
+import com.doubleangels.nextdnsmanagement.protocol.resolver.ResolverVerifier;
 import com.doubleangels.nextdnsmanagement.sentry.SentryInitializer;
 import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
 import com.doubleangels.nextdnsmanagement.utils.InsetsHelper;
+import com.doubleangels.nextdnsmanagement.utils.StartupMetrics;
 
 import java.util.Locale;
 
@@ -15,11 +27,21 @@ import java.util.Locale;
  * Activity for displaying status information. It initializes Sentry for error
  * logging,
  * configures the status bar appearance based on the device's UI mode, and sets
- * the appropriate locale.
+ * the appropriate locale. It also shows rolling probe latency statistics for the
+ * current network and how quickly the status icon was verified at startup,
+ * resolves a canary directly against the private DNS server over DoH and DoT,
+ * and links to the probe history. While visible it subscribes to the
+ * {@link ConnectivityMonitor} so the statistics follow new probe outcomes.
  */
 public class StatusActivity extends BaseActivity {
 
     public SentryManager sentryManager;
+    private ResolverVerifier resolverVerifier;
+    private ConnectivityMonitor connectivityMonitor;
+    private final ConnectivityMonitor.Listener snapshotListener =
+            snapshot -> runOnUiThread(this::showProbeLatency);
+    private String dohSummary;
+    private String dotSummary;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -35,6 +57,31 @@ public class StatusActivity extends BaseActivity {
         } catch (Exception e) {
             sentryManager.captureException(e);
         }
+
+        resolverVerifier = ResolverVerifier.getInstance(this);
+        connectivityMonitor = ConnectivityMonitor.getInstance(this);
+        View probeHistoryLink = findViewById(R.id.probeHistoryLink);
+        if (probeHistoryLink != null) {
+            probeHistoryLink.setOnClickListener(v -> startActivity(new Intent(this, ProbeHistoryActivity.class)));
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        try {
+            connectivityMonitor.subscribe(snapshotListener);
+            showProbeLatency();
+            showResolverCheck();
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        connectivityMonitor.unsubscribe(snapshotListener);
+        super.onPause();
     }
 
     @Override
@@ -55,6 +102,74 @@ public class StatusActivity extends BaseActivity {
         super.attachBaseContext(localizedContext);
     }
 
+    private void showProbeLatency() {
+        TextView probeLatencyTextView = findViewById(R.id.probeLatencyTextView);
+        if (probeLatencyTextView == null) {
+            return;
+        }
+        ConnectivitySnapshot connectivity = connectivityMonitor.getSnapshot();
+        ProbeLatencyStats.Snapshot snapshot = connectivity != null && connectivity.isConnected()
+                ? ProbeLatencyStats.getInstance().snapshot(connectivity.getNetworkHandle())
+                : null;
+        String startup = "";
+        long firstVerifiedMs = StartupMetrics.getElapsedMs(StartupMetrics.Milestone.FIRST_VERIFIED_INDICATOR);
+        if (firstVerifiedMs != StartupMetrics.NOT_REACHED) {
+            startup = "\n" + getString(R.string.startup_verified_indicator, firstVerifiedMs);
+        }
+        if (snapshot == null) {
+            probeLatencyTextView.setText(getString(R.string.probe_latency_unavailable) + startup);
+            return;
+        }
+        ProbeLatencyStats.Percentiles total = snapshot.get(ProbeLatencyStats.Phase.TOTAL);
+        String summary = getString(R.string.probe_latency_summary,
+                total.getP50(), total.getP95(), total.getP99(), total.getSampleCount());
+        String breakdown = getString(R.string.probe_latency_breakdown,
+                formatMedian(snapshot, ProbeLatencyStats.Phase.DNS),
+                formatMedian(snapshot, ProbeLatencyStats.Phase.CONNECT),
+                formatMedian(snapshot, ProbeLatencyStats.Phase.TLS),
+                formatMedian(snapshot, ProbeLatencyStats.Phase.TIME_TO_FIRST_BYTE));
+        probeLatencyTextView.setText(summary + "\n" + breakdown + startup);
+    }
+
+    private void showResolverCheck() {
+        TextView resolverCheckTextView = findViewById(R.id.resolverCheckTextView);
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        Network network = connectivityManager != null ? connectivityManager.getActiveNetwork() : null;
+        LinkProperties linkProperties = network != null ? connectivityManager.getLinkProperties(network) : null;
+        String serverName = linkProperties != null ? linkProperties.getPrivateDnsServerName() : null;
+        if (resolverCheckTextView == null || serverName == null) {
+            return;
+        }
+        dohSummary = getString(R.string.resolver_check_pending);
+        dotSummary = dohSummary;
+        resolverCheckTextView.setText(getString(R.string.resolver_check_summary, serverName, dohSummary, dotSummary));
+        resolverCheckTextView.setVisibility(View.VISIBLE);
+        resolverVerifier.verify(network, serverName, result -> runOnUiThread(() -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            String summary = result.isSuccessful()
+                    ? getString(R.string.probe_latency_ms, result.getLatencyMs())
+                    : getString(R.string.resolver_check_failed);
+            if (result.getTransport() == ResolverResult.Transport.DOH) {
+                dohSummary = summary;
+            } else {
+                dotSummary = summary;
+            }
+            resolverCheckTextView.setText(
+                    getString(R.string.resolver_check_summary, serverName, dohSummary, dotSummary));
+        }));
+    }
+
+    private String formatMedian(ProbeLatencyStats.Snapshot snapshot, ProbeLatencyStats.Phase phase) {
+        int median = snapshot.get(phase).getP50();
+        if (median == ProbeTimings.NOT_MEASURED) {
+            return getString(R.string.probe_latency_not_measured);
+        }
+        return getString(R.string.probe_latency_ms, median);
+    }
+
     private void setupInsets() {
         View root = findViewById(R.id.root);
         InsetsHelper.installOnRoot(root);
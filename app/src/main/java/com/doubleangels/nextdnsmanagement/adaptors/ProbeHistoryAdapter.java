@@ -0,0 +1,147 @@
+package com.doubleangels.nextdnsmanagement.adaptors;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.protocol.history.ProbeHistoryEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A RecyclerView Adapter for displaying probe history entries. Each item shows
+ * when the probe ran and its outcome, coloured like the status icon, followed by
+ * the network, private DNS provider, protocol and latency.
+ */
+public class ProbeHistoryAdapter extends RecyclerView.Adapter<ProbeHistoryAdapter.ProbeHistoryViewHolder> {
+
+    private List<ProbeHistoryEntry> entries;
+
+    public ProbeHistoryAdapter(List<ProbeHistoryEntry> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Entries list cannot be null");
+        }
+        this.entries = entries;
+    }
+
+    public void updateEntries(List<ProbeHistoryEntry> updatedEntries) {
+        if (updatedEntries == null) {
+            throw new IllegalArgumentException("Entries list cannot be null");
+        }
+        this.entries = updatedEntries;
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public ProbeHistoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater
+                .from(parent.getContext())
+                .inflate(R.layout.probe_history_item, parent, false);
+        return new ProbeHistoryViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ProbeHistoryViewHolder holder, int position) {
+        Context context = holder.itemView.getContext();
+        ProbeHistoryEntry entry = entries.get(position);
+
+        String time = DateUtils.formatDateTime(context, entry.getTimestampMs(),
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_MONTH);
+        holder.outcome.setText(time + " · " + context.getString(outcomeLabel(entry.getOutcome())));
+        holder.outcome.setTextColor(ContextCompat.getColor(context, outcomeColor(entry.getOutcome())));
+
+        List<String> details = new ArrayList<>(4);
+        details.add(context.getString(networkLabel(entry.getNetworkType())));
+        details.add(context.getString(privateDnsLabel(entry.getPrivateDns())));
+        if (entry.getProtocol() != null) {
+            details.add(entry.getProtocol());
+        }
+        if (entry.getLatencyMs() != ProbeHistoryEntry.NO_LATENCY) {
+            details.add(String.format(Locale.getDefault(), "%d ms", entry.getLatencyMs()));
+        }
+        holder.description.setText(String.join(" · ", details));
+    }
+
+    @Override
+    public int getItemCount() {
+        return entries.size();
+    }
+
+    private static int privateDnsLabel(ProbeHistoryEntry.PrivateDns privateDns) {
+        switch (privateDns) {
+            case NEXTDNS:
+                return R.string.status_private_dns_nextdns;
+            case OTHER:
+                return R.string.status_private_dns_other;
+            case OPPORTUNISTIC:
+                return R.string.probe_history_private_dns_automatic;
+            default:
+                return R.string.probe_history_private_dns_off;
+        }
+    }
+
+    private static int outcomeLabel(ProbeHistoryEntry.Outcome outcome) {
+        switch (outcome) {
+            case SECURE:
+                return R.string.probe_history_outcome_secure;
+            case INSECURE:
+                return R.string.probe_history_outcome_insecure;
+            case NOT_NEXTDNS:
+                return R.string.probe_history_outcome_not_nextdns;
+            default:
+                return R.string.probe_history_outcome_failed;
+        }
+    }
+
+    private static int outcomeColor(ProbeHistoryEntry.Outcome outcome) {
+        switch (outcome) {
+            case SECURE:
+                return R.color.green;
+            case INSECURE:
+                return R.color.orange;
+            default:
+                return R.color.red;
+        }
+    }
+
+    private static int networkLabel(ProbeHistoryEntry.NetworkType networkType) {
+        switch (networkType) {
+            case WIFI:
+                return R.string.probe_history_network_wifi;
+            case CELLULAR:
+                return R.string.probe_history_network_cellular;
+            case ETHERNET:
+                return R.string.probe_history_network_ethernet;
+            case VPN:
+                return R.string.probe_history_network_vpn;
+            default:
+                return R.string.probe_history_network_other;
+        }
+    }
+
+    /**
+     * Holds references to the views of a single history item.
+     */
+    public static class ProbeHistoryViewHolder extends RecyclerView.ViewHolder {
+
+        TextView outcome;
+        TextView description;
+
+        public ProbeHistoryViewHolder(View itemView) {
+            super(itemView);
+            outcome = itemView.findViewById(R.id.probeHistoryOutcome);
+            description = itemView.findViewById(R.id.probeHistoryDescription);
+        }
+    }
+}
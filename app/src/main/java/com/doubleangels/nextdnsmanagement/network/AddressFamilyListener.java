@@ -0,0 +1,59 @@
+package com.doubleangels.nextdnsmanagement.network;
+
+import androidx.annotation.NonNull;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+
+/**
+ * Counts the address family of every connection a call had to open. With fast
+ * fallback a call may start several attempts, and more than one may succeed
+ * before the losers are closed, so the winner is taken from the connection the
+ * call acquires rather than from connect events. Calls that reuse a pooled
+ * connection are not counted.
+ */
+final class AddressFamilyListener implements EventListener.Factory {
+
+    private final AtomicLong ipv6Wins = new AtomicLong();
+    private final AtomicLong ipv4Wins = new AtomicLong();
+
+    @NonNull
+    @Override
+    public EventListener create(@NonNull Call call) {
+        return new EventListener() {
+            // Fast fallback connects on background threads, so this is set
+            // off the thread that acquires the connection.
+            private volatile boolean connected;
+
+            @Override
+            public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+                    @NonNull Proxy proxy) {
+                connected = true;
+            }
+
+            @Override
+            public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+                if (!connected) {
+                    return;
+                }
+                connected = false;
+                if (connection.route().socketAddress().getAddress() instanceof Inet6Address) {
+                    ipv6Wins.incrementAndGet();
+                } else {
+                    ipv4Wins.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    @NonNull
+    AddressFamilyStats snapshot() {
+        return new AddressFamilyStats(ipv6Wins.get(), ipv4Wins.get());
+    }
+}
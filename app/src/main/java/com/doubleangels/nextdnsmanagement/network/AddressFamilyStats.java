@@ -0,0 +1,48 @@
+package com.doubleangels.nextdnsmanagement.network;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable counts of which address family new connections ended up on after
+ * OkHttp's fast fallback raced IPv6 against IPv4.
+ */
+public final class AddressFamilyStats {
+
+    private final long ipv6Count;
+    private final long ipv4Count;
+
+    AddressFamilyStats(long ipv6Count, long ipv4Count) {
+        this.ipv6Count = ipv6Count;
+        this.ipv4Count = ipv4Count;
+    }
+
+    /** New connections established over IPv6. */
+    public long getIpv6Count() {
+        return ipv6Count;
+    }
+
+    /** New connections established over IPv4. */
+    public long getIpv4Count() {
+        return ipv4Count;
+    }
+
+    public long getConnectionCount() {
+        return ipv6Count + ipv4Count;
+    }
+
+    /**
+     * @return The share of new connections that went over IPv6, or 0 before
+     *         the first connection.
+     */
+    public double getIpv6Ratio() {
+        long connections = getConnectionCount();
+        return connections == 0 ? 0d : (double) ipv6Count / connections;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "AddressFamilyStats{ipv6=" + ipv6Count
+                + ", ipv4=" + ipv4Count + '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.doubleangels.nextdnsmanagement.network;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable counts of how requests through a cached client were answered.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long conditionalHitCount;
+    private final long missCount;
+
+    CacheStats(long hitCount, long conditionalHitCount, long missCount) {
+        this.hitCount = hitCount;
+        this.conditionalHitCount = conditionalHitCount;
+        this.missCount = missCount;
+    }
+
+    /** Requests served from the cache without touching the network. */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** Requests revalidated with If-None-Match and answered 304, reusing cached bytes. */
+    public long getConditionalHitCount() {
+        return conditionalHitCount;
+    }
+
+    /** Requests downloaded in full because nothing usable was cached. */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** Requests that went to the network: revalidations plus misses. */
+    public long getNetworkCount() {
+        return conditionalHitCount + missCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + conditionalHitCount + missCount;
+    }
+
+    /**
+     * @return The share of requests whose body came from the cache, revalidated
+     *         or not, or 0 before the first request.
+     */
+    public double getHitRatio() {
+        long requests = getRequestCount();
+        return requests == 0 ? 0d : (double) (hitCount + conditionalHitCount) / requests;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount
+                + ", conditionalHits=" + conditionalHitCount
+                + ", misses=" + missCount + '}';
+    }
+}
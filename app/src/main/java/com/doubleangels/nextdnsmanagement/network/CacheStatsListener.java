@@ -0,0 +1,43 @@
+package com.doubleangels.nextdnsmanagement.network;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Response;
+
+/**
+ * Counts the cache outcome of every call on a client. One instance serves all
+ * calls, so it only keeps atomic counters.
+ */
+final class CacheStatsListener extends EventListener {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong conditionalHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Override
+    public void cacheHit(@NonNull Call call, @NonNull Response response) {
+        hits.incrementAndGet();
+    }
+
+    @Override
+    public void cacheConditionalHit(@NonNull Call call, @NonNull Response cachedResponse) {
+        conditionalHits.incrementAndGet();
+    }
+
+    @Override
+    public void cacheMiss(@NonNull Call call) {
+        misses.incrementAndGet();
+    }
+
+    @NonNull
+    CacheStats snapshot() {
+        long conditional = conditionalHits.get();
+        // OkHttp reports a 304 revalidation as a conditional hit and then as a hit.
+        long plain = Math.max(0L, hits.get() - conditional);
+        return new CacheStats(plain, conditional, misses.get());
+    }
+}
@@ -0,0 +1,46 @@
+package com.doubleangels.nextdnsmanagement.network;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Timeout presets for the clients in {@link HttpClients}. Besides per-phase
+ * timeouts each preset sets an overall call timeout, which bounds DNS,
+ * connecting, redirects and reading the body together, so a caller knows the
+ * latest moment its callback can arrive.
+ */
+public enum CallBudget {
+
+    /** Status checks that must fail fast rather than leave an indicator stale. */
+    STATUS(2_000L, 2_000L, 2_000L),
+    /** Ordinary requests; the per-phase timeouts the app has always used. */
+    STANDARD(10_000L, 10_000L, 30_000L),
+    /** Downloads, which may stall between chunks but must still end eventually. */
+    DOWNLOAD(10_000L, 60_000L, 5 * 60_000L);
+
+    private final long connectTimeoutMs;
+    private final long readTimeoutMs;
+    private final long callTimeoutMs;
+
+    CallBudget(long connectTimeoutMs, long readTimeoutMs, long callTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.callTimeoutMs = callTimeoutMs;
+    }
+
+    public long getCallTimeoutMs() {
+        return callTimeoutMs;
+    }
+
+    @NonNull
+    OkHttpClient.Builder applyTo(@NonNull OkHttpClient.Builder builder) {
+        return builder
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
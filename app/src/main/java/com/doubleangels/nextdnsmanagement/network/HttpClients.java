@@ -1,9 +1,27 @@
 package com.doubleangels.nextdnsmanagement.network;
 
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.protocol.resolver.DohDns;
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
@@ -13,27 +31,245 @@ import okhttp3.Protocol;
  */
 public final class HttpClients {
 
-    private static final long TIMEOUT_SECONDS = 10L;
-    private static volatile OkHttpClient dnsCheckClient;
+    // Probes fire on network changes and screen starts; keep warm connections
+    // around long enough to cover a burst of network callbacks.
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5L;
+    private static final AddressFamilyListener addressFamilyStats = new AddressFamilyListener();
+    private static volatile OkHttpClient baseClient;
+    // Guarded by HttpClients.class.
+    private static final Map<CallBudget, OkHttpClient> dnsCheckClients = new EnumMap<>(CallBudget.class);
+
+    private static final String API_CACHE_DIRECTORY = "http_api";
+    private static final long API_CACHE_MAX_BYTES = 10L * 1024 * 1024;
+    private static final CacheStatsListener apiCacheStats = new CacheStatsListener();
+    // Guarded by HttpClients.class.
+    private static final Map<CallBudget, OkHttpClient> apiClients = new EnumMap<>(CallBudget.class);
+    // One instance for every budget; two on one directory would corrupt it.
+    // Guarded by HttpClients.class.
+    private static Cache apiCache;
+    // Resolves for the API and web asset clients; null means the system resolver.
+    private static volatile DohDns appDns;
+
+    private static final String WEB_ASSET_CACHE_DIRECTORY = "http_web_assets";
+    // Dashboard bundles run to megabytes; keep them apart so they cannot evict API data.
+    private static final long WEB_ASSET_CACHE_MAX_BYTES = 50L * 1024 * 1024;
+    private static final CacheStatsListener webAssetCacheStats = new CacheStatsListener();
+    private static volatile OkHttpClient webAssetClient;
 
     private HttpClients() {
     }
 
     public static OkHttpClient getDnsCheckClient() {
-        if (dnsCheckClient == null) {
+        return getDnsCheckClient(CallBudget.STANDARD);
+    }
+
+    /**
+     * Client for probes and resolver checks, which never caches.
+     *
+     * @param budget The timeouts every call on the returned client gets.
+     */
+    @NonNull
+    public static OkHttpClient getDnsCheckClient(@NonNull CallBudget budget) {
+        synchronized (HttpClients.class) {
+            OkHttpClient client = dnsCheckClients.get(budget);
+            if (client == null) {
+                client = budget.applyTo(getBaseClient().newBuilder())
+                        .protocols(dnsCheckProtocols())
+                        .eventListenerFactory(call -> ProbeTimingListener.FACTORY.create(call)
+                                .plus(addressFamilyStats.create(call)))
+                        .build();
+                dnsCheckClients.put(budget, client);
+            }
+            return client;
+        }
+    }
+
+    public static OkHttpClient getApiClient(@NonNull Context context) {
+        return getApiClient(context, CallBudget.STANDARD);
+    }
+
+    /**
+     * General-purpose client for fetching data natively, backed by a bounded
+     * on-disk cache. Responses carrying an ETag are stored and, once stale,
+     * revalidated with If-None-Match, so an unchanged resource costs a 304
+     * instead of its body. Probes must keep using {@link #getDnsCheckClient()},
+     * which never caches. Every budget shares the one cache.
+     *
+     * @param budget The timeouts every call on the returned client gets.
+     */
+    @NonNull
+    public static OkHttpClient getApiClient(@NonNull Context context, @NonNull CallBudget budget) {
+        synchronized (HttpClients.class) {
+            OkHttpClient client = apiClients.get(budget);
+            if (client == null) {
+                if (apiCache == null) {
+                    apiCache = new Cache(new File(context.getApplicationContext().getCacheDir(), API_CACHE_DIRECTORY),
+                            API_CACHE_MAX_BYTES);
+                }
+                client = budget.applyTo(getBaseClient().newBuilder())
+                        .cache(apiCache)
+                        .dns(HttpClients::lookupAppDns)
+                        .eventListenerFactory(call -> apiCacheStats.plus(addressFamilyStats.create(call)))
+                        .build();
+                apiClients.put(budget, client);
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Client for the WebView's static assets, with its own bounded on-disk
+     * cache. Uses the {@link CallBudget#DOWNLOAD} budget, since a bundle can
+     * take a while on a slow cellular link while the page waits for it anyway.
+     * Resolves like {@link #getApiClient(Context)}.
+     */
+    @NonNull
+    public static OkHttpClient getWebAssetClient(@NonNull Context context) {
+        if (webAssetClient == null) {
+            synchronized (HttpClients.class) {
+                if (webAssetClient == null) {
+                    File cacheDirectory = new File(context.getApplicationContext().getCacheDir(),
+                            WEB_ASSET_CACHE_DIRECTORY);
+                    webAssetClient = CallBudget.DOWNLOAD.applyTo(getBaseClient().newBuilder())
+                            .cache(new Cache(cacheDirectory, WEB_ASSET_CACHE_MAX_BYTES))
+                            .dns(HttpClients::lookupAppDns)
+                            .eventListenerFactory(call -> webAssetCacheStats.plus(addressFamilyStats.create(call)))
+                            .build();
+                }
+            }
+        }
+        return webAssetClient;
+    }
+
+    /**
+     * Deletes everything the WebView asset cache holds. Blocks on disk I/O.
+     */
+    public static void clearWebAssetCache(@NonNull Context context) {
+        Cache cache = getWebAssetClient(context).cache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.evictAll();
+        } catch (IOException e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+
+    /**
+     * @return How requests through {@link #getWebAssetClient(Context)} were
+     *         answered since process start.
+     */
+    @NonNull
+    public static CacheStats getWebAssetCacheStats() {
+        return webAssetCacheStats.snapshot();
+    }
+
+    /**
+     * Resolves the app's own traffic, the {@link #getApiClient(Context)} and
+     * {@link #getWebAssetClient(Context)} requests, over DNS-over-HTTPS when
+     * the user opted in. Takes effect for the next new connection. The DNS
+     * check client always keeps the system resolver, since resolving through
+     * it is what the probe verifies.
+     *
+     * @param dns The resolver to use, or null for the system resolver.
+     */
+    public static void setAppDns(@Nullable DohDns dns) {
+        appDns = dns;
+    }
+
+    /**
+     * Drops the answers cached by the resolver set with
+     * {@link #setAppDns(DohDns)}. Called when the default network changes,
+     * since addresses picked for the old network may not suit the new one.
+     */
+    public static void clearAppDnsCache() {
+        DohDns dns = appDns;
+        if (dns != null) {
+            dns.clear();
+        }
+    }
+
+    /**
+     * @return How requests through {@link #getApiClient(Context)} were answered
+     *         since process start.
+     */
+    @NonNull
+    public static CacheStats getApiCacheStats() {
+        return apiCacheStats.snapshot();
+    }
+
+    /**
+     * Every client races IPv6 against IPv4 with OkHttp's fast fallback, so a
+     * network with broken IPv6 costs a short head start rather than the
+     * connect timeout.
+     *
+     * @return Which family the new connections of all clients ended up on
+     *         since process start.
+     */
+    @NonNull
+    public static AddressFamilyStats getAddressFamilyStats() {
+        return addressFamilyStats.snapshot();
+    }
+
+    /**
+     * Closes pooled connections, which every client shares. Called when a
+     * network that has been the default is lost, so a socket bound to the old
+     * route is never reused for the next request.
+     */
+    public static void evictDnsCheckConnections() {
+        OkHttpClient client = baseClient;
+        if (client != null) {
+            client.connectionPool().evictAll();
+        }
+    }
+
+    private static List<InetAddress> lookupAppDns(@NonNull String hostname) throws UnknownHostException {
+        DohDns dns = appDns;
+        return dns != null ? dns.lookup(hostname) : Dns.SYSTEM.lookup(hostname);
+    }
+
+    /**
+     * Holds what every client shares: the connection pool, the dispatcher, fast
+     * fallback and the proxy guard. Clients are derived from it with
+     * {@link OkHttpClient#newBuilder()}, so a new budget costs no threads or
+     * sockets of its own.
+     */
+    private static OkHttpClient getBaseClient() {
+        if (baseClient == null) {
             synchronized (HttpClients.class) {
-                if (dnsCheckClient == null) {
-                    dnsCheckClient = new OkHttpClient.Builder()
-                            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                            .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                if (baseClient == null) {
+                    baseClient = CallBudget.STANDARD.applyTo(new OkHttpClient.Builder())
+                            .fastFallback(true)
+                            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES,
+                                    TimeUnit.MINUTES))
                             .addInterceptor(proxySafeInterceptor())
+                            .eventListenerFactory(addressFamilyStats)
                             .build();
                 }
             }
         }
-        return dnsCheckClient;
+        return baseClient;
+    }
+
+    /**
+     * HTTP/2 lets back-to-back probes share one multiplexed connection. It is
+     * only offered when no system proxy is configured, since intercepting proxies
+     * are where HTTP/2 negotiation has been seen to fail; otherwise probes stay
+     * on HTTP/1.1 as before.
+     */
+    static List<Protocol> dnsCheckProtocols() {
+        if (isSystemProxyConfigured()) {
+            return Collections.singletonList(Protocol.HTTP_1_1);
+        }
+        return Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+    }
+
+    private static boolean isSystemProxyConfigured() {
+        String httpsProxy = System.getProperty("https.proxyHost");
+        String httpProxy = System.getProperty("http.proxyHost");
+        return (httpsProxy != null && !httpsProxy.isEmpty()) || (httpProxy != null && !httpProxy.isEmpty());
     }
 
     private static Interceptor proxySafeInterceptor() {
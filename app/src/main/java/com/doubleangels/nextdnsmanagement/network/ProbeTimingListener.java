@@ -0,0 +1,111 @@
+package com.doubleangels.nextdnsmanagement.network;
+
+import androidx.annotation.NonNull;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Records DNS, connect, TLS and time-to-first-byte for one call. Callers attach
+ * a fresh instance as a request tag; {@link #FACTORY} picks it up so untagged
+ * calls pay nothing.
+ */
+public final class ProbeTimingListener extends EventListener {
+
+    public static final EventListener.Factory FACTORY = call -> {
+        ProbeTimingListener listener = call.request().tag(ProbeTimingListener.class);
+        return listener != null ? listener : EventListener.NONE;
+    };
+
+    private volatile long callStartNanos;
+    private volatile long dnsStartNanos;
+    private volatile long dnsEndNanos;
+    private volatile long connectStartNanos;
+    private volatile long connectEndNanos;
+    private volatile long secureConnectStartNanos;
+    private volatile long secureConnectEndNanos;
+    private volatile long responseHeadersEndNanos;
+
+    /**
+     * Tags the request builder with this listener so the shared client reports
+     * the call's phases here.
+     */
+    @NonNull
+    public Request.Builder attachTo(@NonNull Request.Builder builder) {
+        return builder.tag(ProbeTimingListener.class, this);
+    }
+
+    @NonNull
+    public ProbeTimings snapshot() {
+        return new ProbeTimings(
+                elapsedMs(dnsStartNanos, dnsEndNanos),
+                elapsedMs(connectStartNanos, connectEndNanos),
+                elapsedMs(secureConnectStartNanos, secureConnectEndNanos),
+                elapsedMs(callStartNanos, responseHeadersEndNanos));
+    }
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        callStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        if (dnsStartNanos == 0L) {
+            dnsStartNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+        dnsEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+            @NonNull Proxy proxy) {
+        // Fast fallback may start several attempts; measure from the first one.
+        if (connectStartNanos == 0L) {
+            connectStartNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void secureConnectStart(@NonNull Call call) {
+        secureConnectStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+        secureConnectEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress,
+            @NonNull Proxy proxy, Protocol protocol) {
+        connectEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersEnd(@NonNull Call call, @NonNull Response response) {
+        if (responseHeadersEndNanos == 0L) {
+            responseHeadersEndNanos = System.nanoTime();
+        }
+    }
+
+    private static long elapsedMs(long startNanos, long endNanos) {
+        if (startNanos == 0L || endNanos < startNanos) {
+            return ProbeTimings.NOT_MEASURED;
+        }
+        return (endNanos - startNanos) / 1_000_000L;
+    }
+}
@@ -0,0 +1,60 @@
+package com.doubleangels.nextdnsmanagement.network;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable per-phase timings of a single HTTP call, in milliseconds. A phase
+ * that did not happen, such as DNS and connect on a reused connection, is
+ * reported as {@link #NOT_MEASURED}.
+ */
+public final class ProbeTimings {
+
+    public static final long NOT_MEASURED = -1L;
+
+    public static final ProbeTimings EMPTY =
+            new ProbeTimings(NOT_MEASURED, NOT_MEASURED, NOT_MEASURED, NOT_MEASURED);
+
+    private final long dnsMs;
+    private final long connectMs;
+    private final long tlsMs;
+    private final long timeToFirstByteMs;
+
+    public ProbeTimings(long dnsMs, long connectMs, long tlsMs, long timeToFirstByteMs) {
+        this.dnsMs = dnsMs;
+        this.connectMs = connectMs;
+        this.tlsMs = tlsMs;
+        this.timeToFirstByteMs = timeToFirstByteMs;
+    }
+
+    public long getDnsMs() {
+        return dnsMs;
+    }
+
+    /**
+     * @return Time from the first connect attempt until the connection was
+     *         established, including the TLS handshake.
+     */
+    public long getConnectMs() {
+        return connectMs;
+    }
+
+    public long getTlsMs() {
+        return tlsMs;
+    }
+
+    /**
+     * @return Time from the start of the call until the response headers arrived.
+     */
+    public long getTimeToFirstByteMs() {
+        return timeToFirstByteMs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ProbeTimings{dnsMs=" + dnsMs
+                + ", connectMs=" + connectMs
+                + ", tlsMs=" + tlsMs
+                + ", timeToFirstByteMs=" + timeToFirstByteMs + "}";
+    }
+}
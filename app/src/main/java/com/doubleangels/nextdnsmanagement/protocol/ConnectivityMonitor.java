@@ -0,0 +1,546 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+import com.doubleangels.nextdnsmanagement.protocol.history.ProbeHistoryEntry;
+import com.doubleangels.nextdnsmanagement.protocol.history.ProbeHistoryStore;
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+import com.doubleangels.nextdnsmanagement.utils.StartupMetrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide owner of the network callback and the NextDNS probe pipeline.
+ * It follows every network, probes each over its own sockets through
+ * {@link ProbeScheduler}, and publishes a {@link ConnectivitySnapshot} of the
+ * default network to any number of subscribers. Because it outlives activities,
+ * recreating one (e.g. on rotation) neither re-registers the callback nor
+ * restarts a probe that is already under way.
+ */
+public final class ConnectivityMonitor {
+
+    public interface Listener {
+        /**
+         * Called on a background thread with every distinct snapshot, and once with
+         * the current snapshot when subscribing. Implementations must be quick and
+         * hand UI work to the main thread themselves.
+         */
+        void onSnapshot(@NonNull ConnectivitySnapshot snapshot);
+    }
+
+    private static volatile ConnectivityMonitor instance;
+
+    private final SentryManager sentryManager;
+    private final ConnectivityManager connectivityManager;
+    private final DnsProbeEngine probeEngine;
+    private final ProbeHistoryStore historyStore;
+    private final ProbeScheduler probeScheduler;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Listener> observers = new CopyOnWriteArrayList<>();
+    private final List<VerificationWaiter> verificationWaiters = new CopyOnWriteArrayList<>();
+    private final Map<Long, InFlightProbe> activeProbes = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean firstProbeRequested = new AtomicBoolean();
+    // Networks published as the default, whose loss may leave stale sockets in the shared pool.
+    private final Set<Long> defaultRouteHandles = ConcurrentHashMap.newKeySet();
+    // Serializes delivery so every listener sees snapshots in publication order.
+    private final Object publishLock = new Object();
+    private volatile ConnectivitySnapshot latestSnapshot;
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            update(network, connectivityManager.getLinkProperties(network));
+        }
+
+        @Override
+        public void onLinkPropertiesChanged(@NonNull Network network, @NonNull LinkProperties linkProperties) {
+            update(network, linkProperties);
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            long networkHandle = network.getNetworkHandle();
+            ProbeCache.SHARED.invalidate(networkHandle);
+            probeEngine.releaseNetwork(networkHandle);
+            probeScheduler.forget(networkHandle);
+            ProbeLatencyStats.getInstance().forget(networkHandle);
+            cancelProbe(networkHandle);
+            completeWaiters(networkHandle, ConnectivitySnapshot.DISCONNECTED);
+            // Network-bound probes pool their own sockets, released above. The shared
+            // pool can only hold sockets on networks that have been the default.
+            if (defaultRouteHandles.remove(networkHandle)) {
+                HttpClients.evictDnsCheckConnections();
+            }
+            // Republish from whichever network is now the default, if any.
+            refresh();
+        }
+    };
+
+    @VisibleForTesting
+    ConnectivityMonitor(@NonNull Context context, @Nullable ConnectivityManager connectivityManager,
+            @NonNull DnsProbeEngine probeEngine, @NonNull ProbeScheduler probeScheduler) {
+        this.sentryManager = new SentryManager(context);
+        this.connectivityManager = connectivityManager;
+        this.probeEngine = probeEngine;
+        this.historyStore = ProbeHistoryStore.getInstance(context);
+        this.probeScheduler = probeScheduler;
+    }
+
+    @NonNull
+    public static ConnectivityMonitor getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (ConnectivityMonitor.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    instance = new ConnectivityMonitor(appContext,
+                            (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE),
+                            RacingDnsProbeEngine.getShared(appContext),
+                            new ProbeScheduler());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the network callback. The system answers with the current
+     * networks right away, and the default one is probed without debounce, in
+     * parallel with the rest of application start-up, so the first subscriber
+     * finds a pooled connection and usually a verified snapshot. Processes
+     * started in the background, e.g. by the protection watchdog, skip that
+     * probe so waking up does not cost one. Safe to call more than once.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        if (!isStartingInForeground()) {
+            firstProbeRequested.set(true);
+        }
+        if (connectivityManager == null) {
+            sentryManager.captureMessage("ConnectivityManager is null.");
+            publish(ConnectivitySnapshot.DISCONNECTED);
+            return;
+        }
+        try {
+            connectivityManager.registerNetworkCallback(new NetworkRequest.Builder().build(), networkCallback);
+            if (connectivityManager.getActiveNetwork() == null) {
+                // No callback will arrive until a network connects.
+                publishIfNone(ConnectivitySnapshot.DISCONNECTED);
+            }
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+    }
+
+    /**
+     * Adds a listener and immediately delivers the current snapshot to it, if
+     * one has been published. Subscribing also re-evaluates the default network,
+     * probing it when its cached result has expired.
+     */
+    public void subscribe(@NonNull Listener listener) {
+        synchronized (publishLock) {
+            listeners.add(listener);
+            ConnectivitySnapshot snapshot = latestSnapshot;
+            if (snapshot != null) {
+                deliver(listener, snapshot);
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * Adds a listener that receives every distinct snapshot like a subscriber
+     * but does not cause probes by itself, for background components that
+     * budget their own probes through {@link #verify}.
+     */
+    public void observe(@NonNull Listener observer) {
+        synchronized (publishLock) {
+            observers.add(observer);
+            ConnectivitySnapshot snapshot = latestSnapshot;
+            if (snapshot != null) {
+                deliver(observer, snapshot);
+            }
+        }
+    }
+
+    public void unsubscribe(@NonNull Listener listener) {
+        listeners.remove(listener);
+        observers.remove(listener);
+    }
+
+    /**
+     * @return The last published snapshot, or null before the first one.
+     */
+    @Nullable
+    public ConnectivitySnapshot getSnapshot() {
+        return latestSnapshot;
+    }
+
+    /**
+     * Re-evaluates the default network, publishing its state and probing it
+     * unless a fresh result for its DNS configuration is cached.
+     */
+    public void refresh() {
+        if (connectivityManager == null) {
+            return;
+        }
+        try {
+            Network network = connectivityManager.getActiveNetwork();
+            if (network == null) {
+                publish(ConnectivitySnapshot.DISCONNECTED);
+                return;
+            }
+            update(network, connectivityManager.getLinkProperties(network));
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+    }
+
+    /**
+     * Headless, one-shot check for callers without an activity, such as the
+     * home-screen widget. Reports the default network once it is verified, from
+     * a fresh cached result or a new probe, or unverified when the probe fails.
+     * The callback always describes the network that was the default when it
+     * was called: if that network stops being the default first, the callback
+     * gets it unverified, and if it is lost, {@link ConnectivitySnapshot#isConnected()}
+     * is false. The probe skips the debounce but still honours the failure
+     * backoff, so callers should bound how long they wait.
+     */
+    public void verify(@NonNull Listener callback) {
+        verify(callback, false);
+    }
+
+    /**
+     * Like {@link #verify(Listener)}, optionally ignoring a cached result for
+     * explicit user re-checks. A probe already in flight for the same DNS
+     * configuration is joined rather than duplicated.
+     */
+    public void verify(@NonNull Listener callback, boolean ignoreCache) {
+        if (connectivityManager == null) {
+            deliver(callback, ConnectivitySnapshot.DISCONNECTED);
+            return;
+        }
+        try {
+            Network network = connectivityManager.getActiveNetwork();
+            LinkProperties linkProperties = network != null ? connectivityManager.getLinkProperties(network) : null;
+            if (linkProperties == null) {
+                publish(ConnectivitySnapshot.DISCONNECTED);
+                deliver(callback, ConnectivitySnapshot.DISCONNECTED);
+                return;
+            }
+            String fingerprint = ProbeCache.fingerprint(linkProperties);
+            ProbeResult cachedResult = ignoreCache ? null
+                    : ProbeCache.SHARED.get(network.getNetworkHandle(), fingerprint);
+            if (cachedResult != null) {
+                ConnectivitySnapshot snapshot = ConnectivitySnapshot.of(network, linkProperties, cachedResult);
+                publish(snapshot);
+                deliver(callback, snapshot);
+                return;
+            }
+            verificationWaiters.add(new VerificationWaiter(network, callback));
+            scheduleProbe(network, fingerprint, true);
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+    }
+
+    /**
+     * Publishes the default network from its link properties and, when it was
+     * verified recently with the same DNS configuration, from the cached probe
+     * result instead of scheduling a new test.nextdns.io request. Other networks
+     * are probed and cached without publishing anything.
+     */
+    private void update(@NonNull Network network, @Nullable LinkProperties linkProperties) {
+        try {
+            boolean isDefault = isDefaultNetwork(network);
+            if (linkProperties == null) {
+                // The network disappeared between the callback and this lookup.
+                if (isDefault) {
+                    publish(ConnectivitySnapshot.DISCONNECTED);
+                }
+                return;
+            }
+
+            String fingerprint = ProbeCache.fingerprint(linkProperties);
+            ProbeResult cachedResult = ProbeCache.SHARED.get(network.getNetworkHandle(), fingerprint);
+            if (isDefault) {
+                ProbeResult shownResult = cachedResult;
+                ConnectivitySnapshot current = latestSnapshot;
+                if (shownResult == null && current != null && current.describes(network, linkProperties)) {
+                    // Keep showing the expired result until the new probe answers.
+                    shownResult = current.getProbeResult();
+                }
+                publish(ConnectivitySnapshot.of(network, linkProperties, shownResult));
+            }
+            if (cachedResult == null) {
+                requestProbe(network, fingerprint, isDefault);
+            }
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+    }
+
+    /**
+     * Hands the probe to the scheduler, which coalesces bursts of callbacks per
+     * network and backs off while the probe host keeps failing. Nothing is probed
+     * while nobody is subscribed, except the default network right after start.
+     */
+    private void requestProbe(@NonNull Network network, @NonNull String fingerprint, boolean isDefault) {
+        if (isDefault && firstProbeRequested.compareAndSet(false, true)) {
+            scheduleProbe(network, fingerprint, true);
+        } else if (!listeners.isEmpty()) {
+            scheduleProbe(network, fingerprint, false);
+        }
+    }
+
+    private void scheduleProbe(@NonNull Network network, @NonNull String fingerprint, boolean immediately) {
+        long key = network.getNetworkHandle();
+        InFlightProbe inFlight = activeProbes.get(key);
+        if (inFlight != null && fingerprint.equals(inFlight.fingerprint)) {
+            return;
+        }
+        Runnable probe = () -> performProbe(network, fingerprint);
+        if (immediately) {
+            probeScheduler.requestImmediately(key, fingerprint, probe);
+        } else {
+            probeScheduler.request(key, fingerprint, probe);
+        }
+    }
+
+    private void performProbe(@NonNull Network network, @NonNull String fingerprint) {
+        long key = network.getNetworkHandle();
+        InFlightProbe inFlight = new InFlightProbe(fingerprint);
+        InFlightProbe previous = activeProbes.put(key, inFlight);
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        inFlight.attach(probeEngine.probe(network, new DnsProbeEngine.Callback() {
+            @Override
+            public void onResult(@NonNull ProbeResult result) {
+                activeProbes.remove(key, inFlight);
+                probeScheduler.onProbeSucceeded(key);
+                ProbeCache.SHARED.put(key, fingerprint, result);
+                recordHistory(network, result);
+                StartupMetrics.mark(StartupMetrics.Milestone.PROBE_WARMED);
+                LinkProperties linkProperties = connectivityManager.getLinkProperties(network);
+                if (linkProperties == null) {
+                    completeWaiters(key, ConnectivitySnapshot.DISCONNECTED);
+                    return;
+                }
+                // Only while the network is up; onLost has dropped its samples otherwise.
+                ProbeLatencyStats.getInstance().record(key, result);
+                // A result for a configuration the network has since left is only cached.
+                boolean current = fingerprint.equals(ProbeCache.fingerprint(linkProperties));
+                ConnectivitySnapshot snapshot = ConnectivitySnapshot.of(network, linkProperties,
+                        current ? result : null);
+                if (current && isDefaultNetwork(network)) {
+                    publish(snapshot);
+                }
+                completeWaiters(key, snapshot);
+            }
+
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                activeProbes.remove(key, inFlight);
+                probeScheduler.onProbeFailed(key);
+                recordHistory(network, null);
+                sentryManager.captureException(e);
+                completeWaiters(key, unverifiedSnapshot(network));
+            }
+        }));
+    }
+
+    @NonNull
+    private ConnectivitySnapshot unverifiedSnapshot(@NonNull Network network) {
+        LinkProperties linkProperties = connectivityManager.getLinkProperties(network);
+        return linkProperties != null
+                ? ConnectivitySnapshot.of(network, linkProperties, null)
+                : ConnectivitySnapshot.DISCONNECTED;
+    }
+
+    /**
+     * Answers every {@link #verify} caller waiting on the network.
+     */
+    private void completeWaiters(long networkHandle, @NonNull ConnectivitySnapshot snapshot) {
+        for (VerificationWaiter waiter : verificationWaiters) {
+            if (waiter.networkHandle == networkHandle && verificationWaiters.remove(waiter)) {
+                deliver(waiter.listener, snapshot);
+            }
+        }
+    }
+
+    /**
+     * Answers callers waiting on networks that are no longer the default with
+     * their network unverified, since a probe of a non-default network need
+     * not arrive soon, or at all.
+     */
+    private void completeWaitersNotOn(long defaultNetworkHandle) {
+        for (VerificationWaiter waiter : verificationWaiters) {
+            if (waiter.networkHandle != defaultNetworkHandle && verificationWaiters.remove(waiter)) {
+                deliver(waiter.listener, unverifiedSnapshot(waiter.network));
+            }
+        }
+    }
+
+    private void cancelProbe(long key) {
+        InFlightProbe probe = activeProbes.remove(key);
+        if (probe != null) {
+            probe.cancel();
+        }
+    }
+
+    /**
+     * Whether the process is starting to show an activity rather than for a
+     * broadcast or a bound service.
+     */
+    private static boolean isStartingInForeground() {
+        ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(processInfo);
+        return processInfo.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND;
+    }
+
+    private boolean isDefaultNetwork(@NonNull Network network) {
+        return network.equals(connectivityManager.getActiveNetwork());
+    }
+
+    private void publish(@NonNull ConnectivitySnapshot snapshot) {
+        synchronized (publishLock) {
+            ConnectivitySnapshot previous = latestSnapshot;
+            if (snapshot.equals(previous)) {
+                return;
+            }
+            latestSnapshot = snapshot;
+            if (previous == null || previous.getNetworkHandle() != snapshot.getNetworkHandle()) {
+                completeWaitersNotOn(snapshot.getNetworkHandle());
+                // Encrypted lookups cached on the old default may not suit the new one.
+                HttpClients.clearAppDnsCache();
+            }
+            if (snapshot.isConnected()) {
+                defaultRouteHandles.add(snapshot.getNetworkHandle());
+            }
+            for (Listener listener : listeners) {
+                deliver(listener, snapshot);
+            }
+            for (Listener observer : observers) {
+                deliver(observer, snapshot);
+            }
+        }
+    }
+
+    private void publishIfNone(@NonNull ConnectivitySnapshot snapshot) {
+        synchronized (publishLock) {
+            if (latestSnapshot == null) {
+                publish(snapshot);
+            }
+        }
+    }
+
+    private void deliver(Listener listener, ConnectivitySnapshot snapshot) {
+        try {
+            listener.onSnapshot(snapshot);
+        } catch (Exception e) {
+            sentryManager.captureException(e);
+        }
+    }
+
+    /**
+     * Appends the outcome to the probe history; a null result records a failure.
+     */
+    private void recordHistory(@NonNull Network network, @Nullable ProbeResult result) {
+        ProbeHistoryEntry.NetworkType networkType = networkTypeOf(connectivityManager.getNetworkCapabilities(network));
+        LinkProperties linkProperties = connectivityManager.getLinkProperties(network);
+        boolean privateDnsActive = linkProperties != null && linkProperties.isPrivateDnsActive();
+        String privateDnsHostname = linkProperties != null ? linkProperties.getPrivateDnsServerName() : null;
+        historyStore.append(result != null
+                ? ProbeHistoryEntry.fromResult(result, networkType, privateDnsActive, privateDnsHostname)
+                : ProbeHistoryEntry.failure(System.currentTimeMillis(), networkType, privateDnsActive,
+                        privateDnsHostname));
+    }
+
+    private static ProbeHistoryEntry.NetworkType networkTypeOf(@Nullable NetworkCapabilities capabilities) {
+        if (capabilities == null) {
+            return ProbeHistoryEntry.NetworkType.OTHER;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+            return ProbeHistoryEntry.NetworkType.VPN;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return ProbeHistoryEntry.NetworkType.WIFI;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return ProbeHistoryEntry.NetworkType.CELLULAR;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return ProbeHistoryEntry.NetworkType.ETHERNET;
+        }
+        return ProbeHistoryEntry.NetworkType.OTHER;
+    }
+
+    private static final class VerificationWaiter {
+        final Network network;
+        final long networkHandle;
+        final Listener listener;
+
+        VerificationWaiter(@NonNull Network network, @NonNull Listener listener) {
+            this.network = network;
+            this.networkHandle = network.getNetworkHandle();
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * A started probe and the DNS configuration it verifies. The engine may call
+     * back before {@link #attach} returns, so cancellation is remembered until
+     * the handle arrives.
+     */
+    private static final class InFlightProbe {
+        final String fingerprint;
+        private DnsProbeEngine.Cancellable handle;
+        private boolean cancelled;
+
+        InFlightProbe(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        void attach(DnsProbeEngine.Cancellable handle) {
+            synchronized (this) {
+                if (!cancelled) {
+                    this.handle = handle;
+                    return;
+                }
+            }
+            handle.cancel();
+        }
+
+        void cancel() {
+            DnsProbeEngine.Cancellable toCancel;
+            synchronized (this) {
+                cancelled = true;
+                toCancel = handle;
+                handle = null;
+            }
+            if (toCancel != null) {
+                toCancel.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.net.LinkProperties;
+import android.net.Network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Objects;
+
+/**
+ * Immutable view of the default network's DNS state as published by
+ * {@link ConnectivityMonitor}. Two snapshots are equal when they would look the
+ * same to a user, so a repeated probe with an unchanged outcome is not
+ * published again.
+ */
+public final class ConnectivitySnapshot {
+
+    /** Handle reported when there is no default network. */
+    public static final long NO_NETWORK_HANDLE = 0L;
+
+    static final ConnectivitySnapshot DISCONNECTED =
+            new ConnectivitySnapshot(NO_NETWORK_HANDLE, false, false, null, null);
+
+    private final long networkHandle;
+    private final boolean connected;
+    private final boolean privateDnsActive;
+    private final String privateDnsServerName;
+    private final ProbeResult probeResult;
+
+    private ConnectivitySnapshot(long networkHandle, boolean connected, boolean privateDnsActive,
+            @Nullable String privateDnsServerName, @Nullable ProbeResult probeResult) {
+        this.networkHandle = networkHandle;
+        this.connected = connected;
+        this.privateDnsActive = privateDnsActive;
+        this.privateDnsServerName = privateDnsServerName;
+        this.probeResult = probeResult;
+    }
+
+    @NonNull
+    static ConnectivitySnapshot of(@NonNull Network network, @NonNull LinkProperties linkProperties,
+            @Nullable ProbeResult probeResult) {
+        return new ConnectivitySnapshot(network.getNetworkHandle(), true,
+                linkProperties.isPrivateDnsActive(), linkProperties.getPrivateDnsServerName(), probeResult);
+    }
+
+    /**
+     * Whether this snapshot describes the same network and private DNS settings,
+     * i.e. whether its probe result still applies to them.
+     */
+    boolean describes(@NonNull Network network, @NonNull LinkProperties linkProperties) {
+        return connected
+                && networkHandle == network.getNetworkHandle()
+                && privateDnsActive == linkProperties.isPrivateDnsActive()
+                && Objects.equals(privateDnsServerName, linkProperties.getPrivateDnsServerName());
+    }
+
+    public long getNetworkHandle() {
+        return networkHandle;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isPrivateDnsActive() {
+        return privateDnsActive;
+    }
+
+    @Nullable
+    public String getPrivateDnsServerName() {
+        return privateDnsServerName;
+    }
+
+    /**
+     * @return The latest probe of the network, or null while it has not been
+     *         verified with its current DNS configuration.
+     */
+    @Nullable
+    public ProbeResult getProbeResult() {
+        return probeResult;
+    }
+
+    public boolean isVerified() {
+        return probeResult != null;
+    }
+
+    /**
+     * The icon state for this snapshot: the probe outcome when it confirms
+     * NextDNS, the private DNS settings otherwise.
+     */
+    @NonNull
+    public IndicatorState getIndicatorState() {
+        if (!connected) {
+            return IndicatorState.NO_NETWORK;
+        }
+        if (probeResult != null) {
+            IndicatorState probeState = IndicatorState.fromProbeResult(probeResult);
+            if (probeState != null) {
+                return probeState;
+            }
+        }
+        return IndicatorState.fromPrivateDns(privateDnsActive, privateDnsServerName);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ConnectivitySnapshot)) {
+            return false;
+        }
+        ConnectivitySnapshot other = (ConnectivitySnapshot) o;
+        return networkHandle == other.networkHandle
+                && connected == other.connected
+                && privateDnsActive == other.privateDnsActive
+                && Objects.equals(privateDnsServerName, other.privateDnsServerName)
+                && sameOutcome(probeResult, other.probeResult);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(networkHandle, connected, privateDnsActive, privateDnsServerName,
+                probeResult != null ? probeResult.getStatus() : null);
+    }
+
+    private static boolean sameOutcome(@Nullable ProbeResult a, @Nullable ProbeResult b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getStatus() == b.getStatus()
+                && Objects.equals(a.getProtocol(), b.getProtocol())
+                && Objects.equals(a.getResolver(), b.getResolver());
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ConnectivitySnapshot{networkHandle=" + networkHandle
+                + ", connected=" + connected
+                + ", privateDnsActive=" + privateDnsActive
+                + ", privateDnsServerName=" + privateDnsServerName
+                + ", probeResult=" + probeResult + '}';
+    }
+}
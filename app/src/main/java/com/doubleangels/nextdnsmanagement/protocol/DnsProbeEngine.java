@@ -0,0 +1,57 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.net.Network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Strategy for determining whether the device currently resolves through
+ * NextDNS. Implementations run asynchronously and never touch UI state, so they
+ * can be benchmarked, swapped or exercised offline.
+ */
+public interface DnsProbeEngine {
+
+    interface Callback {
+        /**
+         * Called on a background thread when the probe produced a result.
+         */
+        void onResult(@NonNull ProbeResult result);
+
+        /**
+         * Called on a background thread when the probe failed or its response could
+         * not be interpreted.
+         */
+        void onFailure(@NonNull Exception e);
+    }
+
+    /**
+     * Handle for an in-flight probe.
+     */
+    interface Cancellable {
+        void cancel();
+    }
+
+    /**
+     * Starts a probe and reports its outcome to the callback exactly once, unless
+     * it is cancelled first.
+     *
+     * @param network The network to probe over, or null for the default route.
+     */
+    @NonNull
+    Cancellable probe(@Nullable Network network, @NonNull Callback callback);
+
+    /**
+     * Probes over the default route.
+     */
+    @NonNull
+    default Cancellable probe(@NonNull Callback callback) {
+        return probe(null, callback);
+    }
+
+    /**
+     * Releases any per-network state once the network is gone.
+     */
+    default void releaseNetwork(long networkHandle) {
+    }
+}
@@ -0,0 +1,127 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.R;
+
+/**
+ * Immutable description of what the connection status icon should show. States
+ * are computed off the main thread, so the UI thread is only woken up when the
+ * state actually changes. Each state carries a stable key, which identifies it
+ * and is what it is persisted under, and a label for surfaces that show text,
+ * such as the home-screen widget. Distinct states may share an icon; see
+ * {@link #sameAppearance(IndicatorState)}.
+ */
+public final class IndicatorState {
+
+    public static final IndicatorState NO_NETWORK = new IndicatorState("no_network",
+            R.drawable.failure, R.color.red, R.string.status_no_network);
+    public static final IndicatorState PRIVATE_DNS_OFF = new IndicatorState("private_dns_off",
+            R.drawable.failure, R.color.red, R.string.status_private_dns_off);
+    public static final IndicatorState PRIVATE_DNS_NEXTDNS = new IndicatorState("private_dns_nextdns",
+            R.drawable.success, R.color.green, R.string.status_private_dns_nextdns);
+    public static final IndicatorState PRIVATE_DNS_OTHER = new IndicatorState("private_dns_other",
+            R.drawable.success, R.color.yellow, R.string.status_private_dns_other);
+    public static final IndicatorState PROBE_SECURE = new IndicatorState("probe_secure",
+            R.drawable.success, R.color.green, R.string.status_probe_secure);
+    public static final IndicatorState PROBE_INSECURE = new IndicatorState("probe_insecure",
+            R.drawable.failure, R.color.orange, R.string.status_probe_insecure);
+
+    private static final IndicatorState[] ALL = {
+            NO_NETWORK, PRIVATE_DNS_OFF, PRIVATE_DNS_NEXTDNS, PRIVATE_DNS_OTHER, PROBE_SECURE, PROBE_INSECURE
+    };
+
+    private final String key;
+    private final int drawableResId;
+    private final int colorResId;
+    private final int labelResId;
+
+    private IndicatorState(String key, int drawableResId, int colorResId, int labelResId) {
+        this.key = key;
+        this.drawableResId = drawableResId;
+        this.colorResId = colorResId;
+        this.labelResId = labelResId;
+    }
+
+    /**
+     * @return The state persisted under the key, or null for an unknown key.
+     */
+    @Nullable
+    public static IndicatorState fromKey(@Nullable String key) {
+        for (IndicatorState state : ALL) {
+            if (state.key.equals(key)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Derives the state from the private DNS settings of the link alone.
+     */
+    @NonNull
+    static IndicatorState fromPrivateDns(boolean privateDnsActive, @Nullable String serverName) {
+        if (!privateDnsActive) {
+            return PRIVATE_DNS_OFF;
+        }
+        return serverName != null && serverName.contains("nextdns") ? PRIVATE_DNS_NEXTDNS : PRIVATE_DNS_OTHER;
+    }
+
+    /**
+     * Derives the state from a probe, or returns null when the probe says the
+     * device is not using NextDNS and the link-property state should stand.
+     */
+    @Nullable
+    static IndicatorState fromProbeResult(@NonNull ProbeResult result) {
+        switch (result.getStatus()) {
+            case SECURE:
+                return PROBE_SECURE;
+            case INSECURE:
+                return PROBE_INSECURE;
+            default:
+                return null;
+        }
+    }
+
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    public int getDrawableResId() {
+        return drawableResId;
+    }
+
+    public int getColorResId() {
+        return colorResId;
+    }
+
+    public int getLabelResId() {
+        return labelResId;
+    }
+
+    /**
+     * @return Whether both states paint the same icon in the same colour, even
+     *         if their labels differ.
+     */
+    public boolean sameAppearance(@Nullable IndicatorState other) {
+        return other != null && drawableResId == other.drawableResId && colorResId == other.colorResId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IndicatorState)) {
+            return false;
+        }
+        return key.equals(((IndicatorState) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+}
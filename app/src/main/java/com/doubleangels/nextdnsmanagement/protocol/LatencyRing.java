@@ -0,0 +1,48 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring of the most recent latency samples, backed by primitive arrays
+ * so recording a sample never allocates. Not thread-safe; callers synchronize.
+ */
+final class LatencyRing {
+
+    private final int[] samples;
+    private final int[] scratch;
+    private int count;
+    private int next;
+
+    LatencyRing(int capacity) {
+        samples = new int[capacity];
+        scratch = new int[capacity];
+    }
+
+    void add(long valueMs) {
+        samples[next] = (int) Math.min(Integer.MAX_VALUE, Math.max(0L, valueMs));
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Nearest-rank percentile of the samples currently in the window.
+     *
+     * @param percentile Value between 0 and 100.
+     * @return The percentile in milliseconds, or -1 when the window is empty.
+     */
+    int percentile(int percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        System.arraycopy(samples, 0, scratch, 0, count);
+        Arrays.sort(scratch, 0, count);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return scratch[Math.max(0, Math.min(count - 1, rank - 1))];
+    }
+}
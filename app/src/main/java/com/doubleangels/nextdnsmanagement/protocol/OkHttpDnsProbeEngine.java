@@ -0,0 +1,183 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.content.Context;
+import android.net.Network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.network.ProbeTimingListener;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link DnsProbeEngine} that asks test.nextdns.io which resolver answered the
+ * request and over which protocol. Probes for a specific network use a client
+ * whose sockets and DNS lookups are bound to that network, derived from the
+ * shared client so the dispatcher is reused. Each such client pools its
+ * connections separately, so losing a network closes only its own sockets
+ * and never those other clients keep warm on the default route. An engine can
+ * be restricted to one address family, which is how the racing engine probes
+ * the same host over IPv4 and IPv6 at once.
+ */
+public final class OkHttpDnsProbeEngine implements DnsProbeEngine {
+
+    public enum AddressFamily {
+        ANY,
+        IPV4,
+        IPV6
+    }
+
+    // Key for the derived client used when no network is given.
+    private static final long DEFAULT_ROUTE_KEY = 0L;
+    // Back-to-back probes of one network need a connection or two, not five.
+    private static final int NETWORK_POOL_MAX_IDLE_CONNECTIONS = 2;
+    private static final long NETWORK_POOL_KEEP_ALIVE_MINUTES = 5L;
+
+    private final ProbeResponseParser parser;
+    private final OkHttpClient httpClient;
+    private final String probeUrl;
+    private final AddressFamily addressFamily;
+    private final Map<Long, OkHttpClient> derivedClients = new HashMap<>();
+
+    public OkHttpDnsProbeEngine(@NonNull Context context, @NonNull OkHttpClient httpClient) {
+        this(context, httpClient, context.getString(R.string.test_url));
+    }
+
+    public OkHttpDnsProbeEngine(@NonNull Context context, @NonNull OkHttpClient httpClient,
+            @NonNull String probeUrl) {
+        this(context, httpClient, probeUrl, AddressFamily.ANY);
+    }
+
+    public OkHttpDnsProbeEngine(@NonNull Context context, @NonNull OkHttpClient httpClient,
+            @NonNull String probeUrl, @NonNull AddressFamily addressFamily) {
+        this.parser = new ProbeResponseParser(context.getApplicationContext());
+        this.httpClient = httpClient;
+        this.probeUrl = probeUrl;
+        this.addressFamily = addressFamily;
+    }
+
+    @NonNull
+    @Override
+    public Cancellable probe(@Nullable Network network, @NonNull Callback callback) {
+        ProbeTimingListener timingListener = new ProbeTimingListener();
+        Request request = timingListener.attachTo(new Request.Builder())
+                .url(probeUrl)
+                .header("Accept", "application/json")
+                .header("Cache-Control", "no-cache")
+                .build();
+
+        final long startNanos = System.nanoTime();
+        Call call = clientFor(network).newCall(request);
+        call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                ProbeResult result;
+                try (Response ignored = response) {
+                    if (!response.isSuccessful()) {
+                        throw new IOException("Response was not successful: " + response.code());
+                    }
+                    ResponseBody body = response.body();
+                    if (body == null) {
+                        throw new IOException("Response body is null.");
+                    }
+                    long latencyMs = (System.nanoTime() - startNanos) / 1_000_000L;
+                    result = parser.parse(body.source(), latencyMs).withTimings(timingListener.snapshot());
+                } catch (Exception e) {
+                    if (!call.isCanceled()) {
+                        callback.onFailure(e);
+                    }
+                    return;
+                }
+                if (!call.isCanceled()) {
+                    callback.onResult(result);
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                // A cancelled probe was superseded; its "Canceled" error is not a failure.
+                if (!call.isCanceled()) {
+                    callback.onFailure(e);
+                }
+            }
+        });
+        return call::cancel;
+    }
+
+    @Override
+    public void releaseNetwork(long networkHandle) {
+        OkHttpClient client;
+        synchronized (derivedClients) {
+            client = derivedClients.remove(networkHandle);
+        }
+        if (client != null && client.connectionPool() != httpClient.connectionPool()) {
+            client.connectionPool().evictAll();
+        }
+    }
+
+    @NonNull
+    private OkHttpClient clientFor(@Nullable Network network) {
+        if (network == null && addressFamily == AddressFamily.ANY) {
+            return httpClient;
+        }
+        long key = network != null ? network.getNetworkHandle() : DEFAULT_ROUTE_KEY;
+        synchronized (derivedClients) {
+            OkHttpClient client = derivedClients.get(key);
+            if (client == null) {
+                OkHttpClient.Builder builder = httpClient.newBuilder();
+                Dns dns = Dns.SYSTEM;
+                if (network != null) {
+                    builder.socketFactory(network.getSocketFactory())
+                            .connectionPool(new ConnectionPool(NETWORK_POOL_MAX_IDLE_CONNECTIONS,
+                                    NETWORK_POOL_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+                    dns = hostname -> Arrays.asList(network.getAllByName(hostname));
+                }
+                client = builder.dns(filterByFamily(dns, addressFamily)).build();
+                derivedClients.put(key, client);
+            }
+            return client;
+        }
+    }
+
+    @NonNull
+    private static Dns filterByFamily(@NonNull Dns dns, @NonNull AddressFamily addressFamily) {
+        if (addressFamily == AddressFamily.ANY) {
+            return dns;
+        }
+        Class<? extends InetAddress> type = addressFamily == AddressFamily.IPV4
+                ? Inet4Address.class
+                : Inet6Address.class;
+        return hostname -> {
+            List<InetAddress> matching = new ArrayList<>();
+            for (InetAddress address : dns.lookup(hostname)) {
+                if (type.isInstance(address)) {
+                    matching.add(address);
+                }
+            }
+            if (matching.isEmpty()) {
+                throw new UnknownHostException("No " + addressFamily + " address for " + hostname);
+            }
+            return matching;
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.net.LinkProperties;
+import android.net.Network;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers recent test.nextdns.io outcomes per network so the status icon can be
+ * painted immediately when the device switches back to a network it recently
+ * verified. Entries are keyed by {@link Network#getNetworkHandle()} and are only
+ * reused while the network's DNS configuration is unchanged and the TTL holds.
+ */
+final class ProbeCache {
+
+    static final long DEFAULT_TTL_MS = 2 * 60 * 1000L;
+
+    /** Process-wide cache shared by the indicator and the startup warm-up. */
+    static final ProbeCache SHARED = new ProbeCache(DEFAULT_TTL_MS);
+
+    private final long ttlMs;
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    ProbeCache(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Builds a compact description of the DNS-relevant link properties. Two
+     * fingerprints are equal only when the private DNS mode, server name and DNS
+     * server list all match.
+     */
+    @NonNull
+    static String fingerprint(@Nullable LinkProperties linkProperties) {
+        if (linkProperties == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(64);
+        builder.append(linkProperties.isPrivateDnsActive() ? '1' : '0').append('|');
+        String serverName = linkProperties.getPrivateDnsServerName();
+        if (serverName != null) {
+            builder.append(serverName);
+        }
+        List<InetAddress> dnsServers = linkProperties.getDnsServers();
+        for (InetAddress address : dnsServers) {
+            builder.append('|').append(address.getHostAddress());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the cached result for the network, or null when there is none, it
+     * has expired, or the link properties no longer match. Mismatched entries are
+     * dropped so a stale result is never reused.
+     */
+    @Nullable
+    synchronized ProbeResult get(long networkHandle, @NonNull String fingerprint) {
+        Entry entry = entries.get(networkHandle);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.fingerprint.equals(fingerprint)
+                || SystemClock.elapsedRealtime() - entry.storedAtMs > ttlMs) {
+            entries.remove(networkHandle);
+            return null;
+        }
+        return entry.result;
+    }
+
+    synchronized void put(long networkHandle, @NonNull String fingerprint, @NonNull ProbeResult result) {
+        entries.put(networkHandle, new Entry(fingerprint, result, SystemClock.elapsedRealtime()));
+    }
+
+    synchronized void invalidate(long networkHandle) {
+        entries.remove(networkHandle);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        final String fingerprint;
+        final ProbeResult result;
+        final long storedAtMs;
+
+        Entry(String fingerprint, ProbeResult result, long storedAtMs) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+            this.storedAtMs = storedAtMs;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.network.ProbeTimings;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide rolling latency statistics of NextDNS probes, kept per network so
+ * the status screen can show how fast the current resolver path is.
+ */
+public final class ProbeLatencyStats {
+
+    public enum Phase {
+        DNS,
+        CONNECT,
+        TLS,
+        TIME_TO_FIRST_BYTE,
+        TOTAL
+    }
+
+    static final int WINDOW_SIZE = 64;
+    private static final int MAX_NETWORKS = 8;
+
+    private static final ProbeLatencyStats INSTANCE = new ProbeLatencyStats(WINDOW_SIZE);
+
+    private final int windowSize;
+    private final Map<Long, NetworkWindow> windows =
+            new LinkedHashMap<Long, NetworkWindow>(MAX_NETWORKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, NetworkWindow> eldest) {
+                    return size() > MAX_NETWORKS;
+                }
+            };
+
+    ProbeLatencyStats(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    @NonNull
+    public static ProbeLatencyStats getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void record(long networkHandle, @NonNull ProbeResult result) {
+        NetworkWindow window = windows.get(networkHandle);
+        if (window == null) {
+            window = new NetworkWindow(windowSize);
+            windows.put(networkHandle, window);
+        }
+        ProbeTimings timings = result.getTimings();
+        window.add(Phase.DNS, timings.getDnsMs());
+        window.add(Phase.CONNECT, timings.getConnectMs());
+        window.add(Phase.TLS, timings.getTlsMs());
+        window.add(Phase.TIME_TO_FIRST_BYTE, timings.getTimeToFirstByteMs());
+        window.add(Phase.TOTAL, result.getLatencyMs());
+        window.lastTimings = timings;
+    }
+
+    /**
+     * @return Percentiles for the network, or null when it has not been probed.
+     */
+    @Nullable
+    public synchronized Snapshot snapshot(long networkHandle) {
+        NetworkWindow window = windows.get(networkHandle);
+        if (window == null || window.rings.get(Phase.TOTAL).size() == 0) {
+            return null;
+        }
+        Map<Phase, Percentiles> percentiles = new EnumMap<>(Phase.class);
+        for (Map.Entry<Phase, LatencyRing> entry : window.rings.entrySet()) {
+            LatencyRing ring = entry.getValue();
+            percentiles.put(entry.getKey(), new Percentiles(
+                    ring.percentile(50), ring.percentile(95), ring.percentile(99), ring.size()));
+        }
+        return new Snapshot(percentiles, window.lastTimings);
+    }
+
+    /**
+     * Drops the samples of a network that has been lost.
+     */
+    public synchronized void forget(long networkHandle) {
+        windows.remove(networkHandle);
+    }
+
+    /**
+     * Immutable p50/p95/p99 of one phase. Values are -1 when no sample was taken.
+     */
+    public static final class Percentiles {
+        private final int p50;
+        private final int p95;
+        private final int p99;
+        private final int sampleCount;
+
+        Percentiles(int p50, int p95, int p99, int sampleCount) {
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.sampleCount = sampleCount;
+        }
+
+        public int getP50() {
+            return p50;
+        }
+
+        public int getP95() {
+            return p95;
+        }
+
+        public int getP99() {
+            return p99;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+    }
+
+    /**
+     * Immutable view of one network's statistics.
+     */
+    public static final class Snapshot {
+        private final Map<Phase, Percentiles> percentiles;
+        private final ProbeTimings lastTimings;
+
+        Snapshot(Map<Phase, Percentiles> percentiles, ProbeTimings lastTimings) {
+            this.percentiles = percentiles;
+            this.lastTimings = lastTimings;
+        }
+
+        @NonNull
+        public Percentiles get(@NonNull Phase phase) {
+            return percentiles.get(phase);
+        }
+
+        @NonNull
+        public ProbeTimings getLastTimings() {
+            return lastTimings;
+        }
+    }
+
+    private static final class NetworkWindow {
+        final Map<Phase, LatencyRing> rings = new EnumMap<>(Phase.class);
+        ProbeTimings lastTimings = ProbeTimings.EMPTY;
+
+        NetworkWindow(int windowSize) {
+            for (Phase phase : Phase.values()) {
+                rings.put(phase, new LatencyRing(windowSize));
+            }
+        }
+
+        void add(Phase phase, long valueMs) {
+            // Skipped phases (for example DNS on a pooled connection) are not samples.
+            if (valueMs != ProbeTimings.NOT_MEASURED) {
+                rings.get(phase).add(valueMs);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import okio.BufferedSource;
+
+/**
+ * Streams the test.nextdns.io JSON response and extracts only the fields the
+ * probe needs. Resource lookups happen once at construction so parsing a
+ * response allocates little beyond the extracted strings.
+ */
+final class ProbeResponseParser {
+
+    private static final String SERVER_KEY = "server";
+    private static final String RESOLVER_KEY = "resolver";
+
+    private final String statusKey;
+    private final String protocolKey;
+    private final String usingNextDnsStatusValue;
+    private final Set<String> secureProtocols;
+
+    ProbeResponseParser(@NonNull Context context) {
+        this(context.getString(R.string.nextdns_status),
+                context.getString(R.string.nextdns_protocol),
+                context.getString(R.string.using_nextdns_status),
+                context.getResources().getStringArray(R.array.secure_protocols));
+    }
+
+    ProbeResponseParser(@NonNull String statusKey,
+            @NonNull String protocolKey,
+            @NonNull String usingNextDnsStatusValue,
+            @NonNull String[] secureProtocols) {
+        this.statusKey = statusKey;
+        this.protocolKey = protocolKey;
+        this.usingNextDnsStatusValue = usingNextDnsStatusValue;
+        this.secureProtocols = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(secureProtocols)));
+    }
+
+    /**
+     * Reads the response body straight from the OkHttp source without buffering it
+     * into a String or building a JSON tree.
+     *
+     * @throws IOException when the body is not a JSON object or has no status field.
+     */
+    @NonNull
+    ProbeResult parse(@NonNull BufferedSource source, long latencyMs) throws IOException {
+        String status = null;
+        String protocol = null;
+        String server = null;
+        String resolver = null;
+
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(source.inputStream(), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (statusKey.equals(name)) {
+                    status = nextStringOrNull(reader);
+                } else if (protocolKey.equals(name)) {
+                    protocol = nextStringOrNull(reader);
+                } else if (SERVER_KEY.equals(name)) {
+                    server = nextStringOrNull(reader);
+                } else if (RESOLVER_KEY.equals(name)) {
+                    resolver = nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        if (status == null) {
+            throw new IOException("Probe response has no " + statusKey + " field.");
+        }
+        return toResult(status, protocol, server != null ? server : resolver, latencyMs);
+    }
+
+    @NonNull
+    private ProbeResult toResult(@NonNull String status, @Nullable String protocol,
+            @Nullable String resolver, long latencyMs) {
+        long timestampMs = System.currentTimeMillis();
+        if (!usingNextDnsStatusValue.equalsIgnoreCase(status)) {
+            return new ProbeResult(ProbeResult.Status.NOT_NEXTDNS, null, resolver, latencyMs, timestampMs);
+        }
+        boolean isSecure = protocol != null && secureProtocols.contains(protocol);
+        return new ProbeResult(
+                isSecure ? ProbeResult.Status.SECURE : ProbeResult.Status.INSECURE,
+                protocol,
+                resolver,
+                latencyMs,
+                timestampMs);
+    }
+
+    @Nullable
+    private static String nextStringOrNull(@NonNull JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.network.ProbeTimings;
+
+/**
+ * Immutable outcome of a single NextDNS connectivity probe.
+ */
+public final class ProbeResult {
+
+    public enum Status {
+        /** The device resolves through NextDNS over an encrypted protocol. */
+        SECURE,
+        /** The device resolves through NextDNS over plain DNS. */
+        INSECURE,
+        /** The device does not resolve through NextDNS. */
+        NOT_NEXTDNS
+    }
+
+    private final Status status;
+    private final String protocol;
+    private final String resolver;
+    private final long latencyMs;
+    private final long timestampMs;
+    private final ProbeTimings timings;
+
+    public ProbeResult(@NonNull Status status,
+            @Nullable String protocol,
+            @Nullable String resolver,
+            long latencyMs,
+            long timestampMs) {
+        this(status, protocol, resolver, latencyMs, timestampMs, ProbeTimings.EMPTY);
+    }
+
+    public ProbeResult(@NonNull Status status,
+            @Nullable String protocol,
+            @Nullable String resolver,
+            long latencyMs,
+            long timestampMs,
+            @NonNull ProbeTimings timings) {
+        this.status = status;
+        this.protocol = protocol;
+        this.resolver = resolver;
+        this.latencyMs = latencyMs;
+        this.timestampMs = timestampMs;
+        this.timings = timings;
+    }
+
+    /**
+     * Returns a copy of this result carrying the given per-phase timings.
+     */
+    @NonNull
+    public ProbeResult withTimings(@NonNull ProbeTimings timings) {
+        return new ProbeResult(status, protocol, resolver, latencyMs, timestampMs, timings);
+    }
+
+    @NonNull
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The protocol reported by test.nextdns.io (for example DOH or DOT), or
+     *         null when the device is not using NextDNS.
+     */
+    @Nullable
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return The NextDNS server or upstream resolver reported by the probe, when
+     *         present in the response.
+     */
+    @Nullable
+    public String getResolver() {
+        return resolver;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    /**
+     * @return Wall-clock time in milliseconds at which the probe completed.
+     */
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    /**
+     * @return DNS, connect, TLS and time-to-first-byte timings of the probe request.
+     */
+    @NonNull
+    public ProbeTimings getTimings() {
+        return timings;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ProbeResult{status=" + status
+                + ", protocol=" + protocol
+                + ", resolver=" + resolver
+                + ", latencyMs=" + latencyMs
+                + ", timestampMs=" + timestampMs
+                + ", timings=" + timings + "}";
+    }
+}
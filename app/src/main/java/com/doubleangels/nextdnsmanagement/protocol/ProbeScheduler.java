@@ -0,0 +1,307 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when a probe may run for a given network. Triggers arriving while a
+ * probe is pending are coalesced into one, consecutive failures push the next
+ * probe out with exponential backoff and jitter, and a change in the network's
+ * DNS configuration resets the backoff so real changes are verified promptly.
+ * Probes are started on a dedicated background thread, never on the main looper.
+ */
+public final class ProbeScheduler {
+
+    static final long DEFAULT_DEBOUNCE_MS = 300L;
+    static final long DEFAULT_INITIAL_BACKOFF_MS = 2_000L;
+    static final long DEFAULT_MAX_BACKOFF_MS = 5 * 60 * 1000L;
+
+    private static ScheduledExecutorService sharedExecutor;
+
+    private final ScheduledExecutorService executor;
+    private final LongSupplier clock;
+    private final Random random;
+    private final long debounceMs;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final Map<Long, KeyState> states = new HashMap<>();
+
+    public ProbeScheduler() {
+        this(getSharedExecutor(), SystemClock::elapsedRealtime, new Random(),
+                DEFAULT_DEBOUNCE_MS, DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_MAX_BACKOFF_MS);
+    }
+
+    @VisibleForTesting
+    ProbeScheduler(@NonNull ScheduledExecutorService executor, @NonNull LongSupplier clock,
+            @NonNull Random random, long debounceMs, long initialBackoffMs, long maxBackoffMs) {
+        this.executor = executor;
+        this.clock = clock;
+        this.random = random;
+        this.debounceMs = debounceMs;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * Requests a probe for the key. If one is already pending it is replaced by
+     * this probe and pushed back by the debounce interval, but never earlier than
+     * the current backoff allows.
+     *
+     * @param fingerprint The DNS configuration the probe verifies, or null when
+     *                    unknown. A different non-null fingerprint resets the backoff.
+     */
+    public void request(long key, @Nullable String fingerprint, @NonNull Runnable probe) {
+        schedule(key, fingerprint, probe, debounceMs);
+    }
+
+    /**
+     * Like {@link #request} but without the debounce, for probes that should start
+     * as soon as the backoff allows, such as the first probe after process start.
+     */
+    public void requestImmediately(long key, @Nullable String fingerprint, @NonNull Runnable probe) {
+        schedule(key, fingerprint, probe, 0L);
+    }
+
+    private synchronized void schedule(long key, @Nullable String fingerprint, @NonNull Runnable probe,
+            long minDelayMs) {
+        KeyState state = states.get(key);
+        if (state == null) {
+            state = new KeyState();
+            states.put(key, state);
+        }
+        if (fingerprint != null && !fingerprint.equals(state.fingerprint)) {
+            if (state.fingerprint != null) {
+                state.resetBackoff();
+            }
+            state.fingerprint = fingerprint;
+        }
+        if (state.pending != null) {
+            state.pending.cancel(false);
+        }
+
+        long now = clock.getAsLong();
+        long delayMs = Math.max(minDelayMs, state.notBeforeMs - now);
+        final KeyState scheduled = state;
+        // cancel(false) cannot stop a run that has already started, so each run
+        // checks that it is still the latest one before it claims the slot.
+        final long token = ++state.generation;
+        state.runAtMs = now + delayMs;
+        state.pending = executor.schedule(() -> {
+            synchronized (ProbeScheduler.this) {
+                if (states.get(key) != scheduled || scheduled.generation != token) {
+                    return;
+                }
+                scheduled.pending = null;
+                scheduled.runAtMs = 0L;
+            }
+            probe.run();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Clears the backoff for the key after a probe produced a result.
+     */
+    public synchronized void onProbeSucceeded(long key) {
+        KeyState state = states.get(key);
+        if (state != null) {
+            state.resetBackoff();
+        }
+    }
+
+    /**
+     * Records a failed probe and delays the next one by an exponentially growing,
+     * jittered interval capped at the maximum backoff. Ignored once the key
+     * has been forgotten, so a late failure does not revive a lost network.
+     */
+    public synchronized void onProbeFailed(long key) {
+        KeyState state = states.get(key);
+        if (state == null) {
+            return;
+        }
+        state.failureCount++;
+        long ceilingMs = backoffCeiling(state.failureCount);
+        // Equal jitter: half the window is fixed, half is random, so clients that
+        // failed together do not retry in lockstep.
+        long halfMs = ceilingMs / 2;
+        state.backoffMs = halfMs + (halfMs > 0 ? (long) (random.nextDouble() * (halfMs + 1)) : 0L);
+        state.notBeforeMs = clock.getAsLong() + state.backoffMs;
+    }
+
+    /**
+     * Cancels the pending probe for the key, if any, keeping its backoff.
+     */
+    public synchronized void cancel(long key) {
+        KeyState state = states.get(key);
+        if (state != null && state.pending != null) {
+            state.generation++;
+            state.pending.cancel(false);
+            state.pending = null;
+            state.runAtMs = 0L;
+        }
+    }
+
+    /**
+     * Cancels the pending probe and drops all state for the key, e.g. when its
+     * network is lost.
+     */
+    public synchronized void forget(long key) {
+        cancel(key);
+        states.remove(key);
+    }
+
+    public synchronized void cancelAll() {
+        for (KeyState state : states.values()) {
+            state.generation++;
+            if (state.pending != null) {
+                state.pending.cancel(false);
+            }
+        }
+        states.clear();
+    }
+
+    @NonNull
+    public synchronized State getState(long key) {
+        KeyState state = states.get(key);
+        if (state == null) {
+            return State.IDLE;
+        }
+        return new State(state.failureCount, state.backoffMs, state.notBeforeMs,
+                state.pending != null, state.runAtMs, state.fingerprint);
+    }
+
+    private long backoffCeiling(int failureCount) {
+        int shift = Math.min(failureCount - 1, 30);
+        long ceilingMs = initialBackoffMs << shift;
+        if (ceilingMs <= 0 || ceilingMs > maxBackoffMs) {
+            return maxBackoffMs;
+        }
+        return ceilingMs;
+    }
+
+    private static synchronized ScheduledExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "dns-probe-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedExecutor;
+    }
+
+    private static final class KeyState {
+        String fingerprint;
+        int failureCount;
+        long backoffMs;
+        long notBeforeMs;
+        long runAtMs;
+        // Identifies the latest scheduled run; bumped on every schedule and cancel.
+        long generation;
+        ScheduledFuture<?> pending;
+
+        void resetBackoff() {
+            failureCount = 0;
+            backoffMs = 0L;
+            notBeforeMs = 0L;
+        }
+    }
+
+    /**
+     * Immutable view of the scheduler's state for one key.
+     */
+    public static final class State {
+
+        static final State IDLE = new State(0, 0L, 0L, false, 0L, null);
+
+        private final int failureCount;
+        private final long backoffMs;
+        private final long notBeforeMs;
+        private final boolean pending;
+        private final long scheduledAtMs;
+        private final String fingerprint;
+
+        State(int failureCount, long backoffMs, long notBeforeMs, boolean pending,
+                long scheduledAtMs, @Nullable String fingerprint) {
+            this.failureCount = failureCount;
+            this.backoffMs = backoffMs;
+            this.notBeforeMs = notBeforeMs;
+            this.pending = pending;
+            this.scheduledAtMs = scheduledAtMs;
+            this.fingerprint = fingerprint;
+        }
+
+        /** Consecutive failures since the last success or configuration change. */
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        /** The jittered backoff applied after the last failure, or 0. */
+        public long getBackoffMs() {
+            return backoffMs;
+        }
+
+        /** Clock time before which no probe will start, or 0 when not backing off. */
+        public long getNotBeforeMs() {
+            return notBeforeMs;
+        }
+
+        public boolean isPending() {
+            return pending;
+        }
+
+        /** Clock time the pending probe is due, or 0 when none is pending. */
+        public long getScheduledAtMs() {
+            return scheduledAtMs;
+        }
+
+        @Nullable
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State other = (State) o;
+            return failureCount == other.failureCount
+                    && backoffMs == other.backoffMs
+                    && notBeforeMs == other.notBeforeMs
+                    && pending == other.pending
+                    && scheduledAtMs == other.scheduledAtMs
+                    && Objects.equals(fingerprint, other.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(failureCount, backoffMs, notBeforeMs, pending, scheduledAtMs, fingerprint);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "State{failures=" + failureCount
+                    + ", backoffMs=" + backoffMs
+                    + ", notBeforeMs=" + notBeforeMs
+                    + ", pending=" + pending
+                    + ", scheduledAtMs=" + scheduledAtMs + '}';
+        }
+    }
+}
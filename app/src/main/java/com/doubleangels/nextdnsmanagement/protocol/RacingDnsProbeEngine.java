@@ -0,0 +1,140 @@
+package com.doubleangels.nextdnsmanagement.protocol;
+
+import android.content.Context;
+import android.net.Network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.network.CallBudget;
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * {@link DnsProbeEngine} that runs several contenders at once and reports the
+ * first result, cancelling the rest. A slow endpoint or address family then
+ * costs nothing as long as another one answers; the probe only fails once every
+ * contender has failed.
+ */
+public final class RacingDnsProbeEngine implements DnsProbeEngine {
+
+    private static volatile RacingDnsProbeEngine sharedEngine;
+
+    private final List<DnsProbeEngine> contenders;
+
+    public RacingDnsProbeEngine(@NonNull List<? extends DnsProbeEngine> contenders) {
+        if (contenders.isEmpty()) {
+            throw new IllegalArgumentException("At least one contender is required");
+        }
+        this.contenders = Collections.unmodifiableList(new ArrayList<>(contenders));
+    }
+
+    /**
+     * Returns the process-wide engine racing every R.array.probe_race_urls endpoint
+     * over IPv4 and IPv6 on the {@link CallBudget#STATUS} DNS check client, so
+     * an unreachable endpoint fails the probe within that budget instead of
+     * leaving the indicator stale. Sharing it means connections opened by one
+     * caller, such as the startup warm-up, are reused by the next.
+     */
+    @NonNull
+    public static RacingDnsProbeEngine getShared(@NonNull Context context) {
+        if (sharedEngine == null) {
+            synchronized (RacingDnsProbeEngine.class) {
+                if (sharedEngine == null) {
+                    Context appContext = context.getApplicationContext();
+                    List<DnsProbeEngine> contenders = new ArrayList<>();
+                    OkHttpClient client = HttpClients.getDnsCheckClient(CallBudget.STATUS);
+                    for (String url : appContext.getResources().getStringArray(R.array.probe_race_urls)) {
+                        contenders.add(new OkHttpDnsProbeEngine(appContext, client, url,
+                                OkHttpDnsProbeEngine.AddressFamily.IPV4));
+                        contenders.add(new OkHttpDnsProbeEngine(appContext, client, url,
+                                OkHttpDnsProbeEngine.AddressFamily.IPV6));
+                    }
+                    sharedEngine = new RacingDnsProbeEngine(contenders);
+                }
+            }
+        }
+        return sharedEngine;
+    }
+
+    @NonNull
+    @Override
+    public Cancellable probe(@Nullable Network network, @NonNull Callback callback) {
+        Race race = new Race(callback, contenders.size());
+        for (DnsProbeEngine contender : contenders) {
+            race.enter(contender.probe(network, race));
+        }
+        return race::cancel;
+    }
+
+    @Override
+    public void releaseNetwork(long networkHandle) {
+        for (DnsProbeEngine contender : contenders) {
+            contender.releaseNetwork(networkHandle);
+        }
+    }
+
+    private static final class Race implements Callback {
+
+        private final Callback callback;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicInteger remaining;
+        // Guarded by itself.
+        private final List<Cancellable> entrants = new ArrayList<>();
+
+        Race(Callback callback, int contenderCount) {
+            this.callback = callback;
+            this.remaining = new AtomicInteger(contenderCount);
+        }
+
+        void enter(Cancellable entrant) {
+            synchronized (entrants) {
+                if (!finished.get()) {
+                    entrants.add(entrant);
+                    return;
+                }
+            }
+            // The race was decided before this contender was registered.
+            entrant.cancel();
+        }
+
+        @Override
+        public void onResult(@NonNull ProbeResult result) {
+            if (finished.compareAndSet(false, true)) {
+                cancelEntrants();
+                callback.onResult(result);
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull Exception e) {
+            if (remaining.decrementAndGet() == 0 && finished.compareAndSet(false, true)) {
+                callback.onFailure(e);
+            }
+        }
+
+        void cancel() {
+            finished.set(true);
+            cancelEntrants();
+        }
+
+        private void cancelEntrants() {
+            List<Cancellable> toCancel;
+            synchronized (entrants) {
+                toCancel = new ArrayList<>(entrants);
+                entrants.clear();
+            }
+            for (Cancellable entrant : toCancel) {
+                entrant.cancel();
+            }
+        }
+    }
+}
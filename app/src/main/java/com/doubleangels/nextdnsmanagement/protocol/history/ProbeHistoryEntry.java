@@ -0,0 +1,136 @@
+package com.doubleangels.nextdnsmanagement.protocol.history;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.protocol.ProbeResult;
+
+/**
+ * One probe outcome as stored in the probe history log. The Private DNS
+ * hostname carries the NextDNS profile id, so only what kind of resolver it
+ * names is kept.
+ */
+public final class ProbeHistoryEntry {
+
+    public enum NetworkType {
+        OTHER,
+        WIFI,
+        CELLULAR,
+        ETHERNET,
+        VPN
+    }
+
+    public enum Outcome {
+        SECURE,
+        INSECURE,
+        NOT_NEXTDNS,
+        FAILED
+    }
+
+    // Stored by ordinal; append new modes only.
+    public enum PrivateDns {
+        OFF,
+        NEXTDNS,
+        OTHER,
+        /** The "Automatic" mode upgraded to a resolver the network offered; it has no hostname. */
+        OPPORTUNISTIC;
+
+        @NonNull
+        static PrivateDns of(boolean active, @Nullable String hostname) {
+            if (hostname == null || hostname.isEmpty()) {
+                return active ? OPPORTUNISTIC : OFF;
+            }
+            return hostname.contains("nextdns") ? NEXTDNS : OTHER;
+        }
+    }
+
+    public static final int NO_LATENCY = -1;
+
+    private final long timestampMs;
+    private final NetworkType networkType;
+    private final PrivateDns privateDns;
+    private final Outcome outcome;
+    private final String protocol;
+    private final int latencyMs;
+
+    public ProbeHistoryEntry(long timestampMs, @NonNull NetworkType networkType,
+            @NonNull PrivateDns privateDns, @NonNull Outcome outcome,
+            @Nullable String protocol, int latencyMs) {
+        this.timestampMs = timestampMs;
+        this.networkType = networkType;
+        this.privateDns = privateDns;
+        this.outcome = outcome;
+        this.protocol = protocol;
+        this.latencyMs = latencyMs;
+    }
+
+    @NonNull
+    public static ProbeHistoryEntry fromResult(@NonNull ProbeResult result, @NonNull NetworkType networkType,
+            boolean privateDnsActive, @Nullable String privateDnsHostname) {
+        Outcome outcome;
+        switch (result.getStatus()) {
+            case SECURE:
+                outcome = Outcome.SECURE;
+                break;
+            case INSECURE:
+                outcome = Outcome.INSECURE;
+                break;
+            default:
+                outcome = Outcome.NOT_NEXTDNS;
+                break;
+        }
+        int latencyMs = (int) Math.min(Integer.MAX_VALUE, Math.max(0L, result.getLatencyMs()));
+        return new ProbeHistoryEntry(result.getTimestampMs(), networkType,
+                PrivateDns.of(privateDnsActive, privateDnsHostname), outcome,
+                result.getProtocol(), latencyMs);
+    }
+
+    @NonNull
+    public static ProbeHistoryEntry failure(long timestampMs, @NonNull NetworkType networkType,
+            boolean privateDnsActive, @Nullable String privateDnsHostname) {
+        return new ProbeHistoryEntry(timestampMs, networkType, PrivateDns.of(privateDnsActive, privateDnsHostname),
+                Outcome.FAILED, null, NO_LATENCY);
+    }
+
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    @NonNull
+    public NetworkType getNetworkType() {
+        return networkType;
+    }
+
+    @NonNull
+    public PrivateDns getPrivateDns() {
+        return privateDns;
+    }
+
+    @NonNull
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    @Nullable
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return Probe latency, or {@link #NO_LATENCY} for failed probes.
+     */
+    public int getLatencyMs() {
+        return latencyMs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ProbeHistoryEntry{timestampMs=" + timestampMs
+                + ", networkType=" + networkType
+                + ", privateDns=" + privateDns
+                + ", outcome=" + outcome
+                + ", protocol=" + protocol
+                + ", latencyMs=" + latencyMs + '}';
+    }
+}
@@ -0,0 +1,218 @@
+package com.doubleangels.nextdnsmanagement.protocol.history;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Append-only log of probe outcomes in fixed-width binary records (see
+ * {@link ProbeRecordCodec}). Appends are handed to a single writer thread that
+ * keeps one {@link FileChannel} open and reuses one direct buffer, so recording a
+ * probe costs one small write and no allocation on the caller's thread. When the
+ * active file reaches its size limit it replaces the single rotated file, which
+ * bounds the history to twice that limit.
+ */
+public final class ProbeHistoryStore {
+
+    static final long DEFAULT_MAX_FILE_BYTES = 1024L * ProbeRecordCodec.RECORD_SIZE;
+    private static final String DIRECTORY_NAME = "probe_history";
+    private static final String ACTIVE_FILE_NAME = "probe_history.bin";
+    private static final String ROTATED_FILE_NAME = "probe_history.1.bin";
+
+    private static volatile ProbeHistoryStore instance;
+
+    private final File activeFile;
+    private final File rotatedFile;
+    private final long maxFileBytes;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "probe-history-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Owned by the writer thread.
+    private final ByteBuffer recordBuffer = ByteBuffer.allocateDirect(ProbeRecordCodec.RECORD_SIZE);
+    private FileChannel channel;
+    private boolean legacyFilesChecked;
+
+    @VisibleForTesting
+    ProbeHistoryStore(@NonNull File directory, long maxFileBytes) {
+        this.activeFile = new File(directory, ACTIVE_FILE_NAME);
+        this.rotatedFile = new File(directory, ROTATED_FILE_NAME);
+        this.maxFileBytes = Math.max(ProbeRecordCodec.RECORD_SIZE, maxFileBytes);
+    }
+
+    @NonNull
+    public static ProbeHistoryStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (ProbeHistoryStore.class) {
+                if (instance == null) {
+                    File directory = new File(context.getApplicationContext().getNoBackupFilesDir(), DIRECTORY_NAME);
+                    instance = new ProbeHistoryStore(directory, DEFAULT_MAX_FILE_BYTES);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Queues the entry for appending. Never blocks on disk I/O.
+     */
+    public void append(@NonNull ProbeHistoryEntry entry) {
+        writer.execute(() -> {
+            try {
+                write(entry);
+            } catch (IOException e) {
+                closeChannel();
+                SentryManager.captureStaticException(e);
+            }
+        });
+    }
+
+    /**
+     * Reads the whole history, newest entry first. Runs behind any queued appends
+     * so the result includes them.
+     */
+    @WorkerThread
+    @NonNull
+    public List<ProbeHistoryEntry> readAll() throws IOException {
+        try {
+            return writer.submit(this::readAllOnWriter).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Reading probe history failed.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading probe history.", e);
+        }
+    }
+
+    private void write(ProbeHistoryEntry entry) throws IOException {
+        FileChannel activeChannel = openChannel();
+        if (activeChannel.size() + ProbeRecordCodec.RECORD_SIZE > maxFileBytes) {
+            rotate();
+            activeChannel = openChannel();
+        }
+        recordBuffer.clear();
+        ProbeRecordCodec.encode(entry, recordBuffer);
+        recordBuffer.flip();
+        while (recordBuffer.hasRemaining()) {
+            activeChannel.write(recordBuffer);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel != null) {
+            return channel;
+        }
+        discardLegacyFiles();
+        File directory = activeFile.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        FileChannel opened = FileChannel.open(activeFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drop a partial record left behind by a process killed mid-write.
+        long size = opened.size();
+        long aligned = size - size % ProbeRecordCodec.RECORD_SIZE;
+        if (aligned != size) {
+            opened.truncate(aligned);
+        }
+        opened.position(aligned);
+        channel = opened;
+        return opened;
+    }
+
+    private void rotate() throws IOException {
+        closeChannel();
+        Files.move(activeFile.toPath(), rotatedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing useful to do; the next append reopens the file.
+        } finally {
+            channel = null;
+        }
+    }
+
+    private List<ProbeHistoryEntry> readAllOnWriter() throws IOException {
+        discardLegacyFiles();
+        List<ProbeHistoryEntry> entries = new ArrayList<>();
+        readFile(rotatedFile, entries);
+        readFile(activeFile, entries);
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    /**
+     * Deletes history written in an older record format. Version 1 records held
+     * the Private DNS hostname, which includes the profile id, in plaintext.
+     */
+    private void discardLegacyFiles() {
+        if (legacyFilesChecked) {
+            return;
+        }
+        legacyFilesChecked = true;
+        for (File file : new File[] { rotatedFile, activeFile }) {
+            if (file.isFile() && !isCurrentFormat(file) && !file.delete()) {
+                SentryManager.captureStaticException(new IOException("Unable to delete " + file));
+            }
+        }
+    }
+
+    private static boolean isCurrentFormat(File file) {
+        try (FileChannel readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer version = ByteBuffer.allocate(1);
+            return readChannel.read(version, 0) <= 0 || version.get(0) == ProbeRecordCodec.VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void readFile(File file, List<ProbeHistoryEntry> entries) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        try (FileChannel readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = readChannel.size();
+            int length = (int) Math.min(size - size % ProbeRecordCodec.RECORD_SIZE, Integer.MAX_VALUE);
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining() && readChannel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the file ends.
+            }
+            buffer.flip();
+            while (buffer.remaining() >= ProbeRecordCodec.RECORD_SIZE) {
+                ProbeHistoryEntry entry = ProbeRecordCodec.decode(buffer);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+    }
+}
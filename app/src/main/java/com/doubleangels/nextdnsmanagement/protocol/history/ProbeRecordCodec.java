@@ -0,0 +1,125 @@
+package com.doubleangels.nextdnsmanagement.protocol.history;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-width binary layout of a {@link ProbeHistoryEntry}. Every record is
+ * {@link #RECORD_SIZE} bytes, so the log can be appended to and read back
+ * without any framing or index:
+ *
+ * <pre>
+ *  0  byte    format version
+ *  1  byte    network type ordinal
+ *  2  byte    outcome ordinal
+ *  3  byte    protocol length (0..8)
+ *  4  long    timestamp, epoch millis
+ * 12  int     latency millis, -1 when failed
+ * 16  8 bytes protocol, ASCII
+ * 24  byte    private DNS ordinal
+ * 25  7 bytes reserved, zero
+ * </pre>
+ *
+ * Version 1 records also held the private DNS hostname; they are not read.
+ */
+final class ProbeRecordCodec {
+
+    static final int RECORD_SIZE = 32;
+    static final byte VERSION = 2;
+
+    private static final int PROTOCOL_OFFSET = 16;
+    private static final int PROTOCOL_CAPACITY = 8;
+    private static final int PRIVATE_DNS_OFFSET = 24;
+
+    private static final ProbeHistoryEntry.NetworkType[] NETWORK_TYPES = ProbeHistoryEntry.NetworkType.values();
+    private static final ProbeHistoryEntry.Outcome[] OUTCOMES = ProbeHistoryEntry.Outcome.values();
+    private static final ProbeHistoryEntry.PrivateDns[] PRIVATE_DNS_MODES = ProbeHistoryEntry.PrivateDns.values();
+
+    private ProbeRecordCodec() {
+    }
+
+    /**
+     * Writes the entry into the buffer at its current position, advancing it by
+     * exactly {@link #RECORD_SIZE} bytes.
+     */
+    static void encode(@NonNull ProbeHistoryEntry entry, @NonNull ByteBuffer buffer) {
+        int start = buffer.position();
+        byte[] protocol = truncate(entry.getProtocol(), StandardCharsets.US_ASCII, PROTOCOL_CAPACITY);
+
+        buffer.put(VERSION);
+        buffer.put((byte) entry.getNetworkType().ordinal());
+        buffer.put((byte) entry.getOutcome().ordinal());
+        buffer.put((byte) protocol.length);
+        buffer.putLong(entry.getTimestampMs());
+        buffer.putInt(entry.getLatencyMs());
+        buffer.put(protocol);
+        for (int i = protocol.length; i < PROTOCOL_CAPACITY; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.put((byte) entry.getPrivateDns().ordinal());
+        while (buffer.position() - start < RECORD_SIZE) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * Reads the record starting at the buffer's current position and advances it
+     * by {@link #RECORD_SIZE} bytes.
+     *
+     * @return The entry, or null when the record is blank, from an unknown
+     *         format version, or otherwise unreadable.
+     */
+    @Nullable
+    static ProbeHistoryEntry decode(@NonNull ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start + RECORD_SIZE);
+        if (buffer.get(start) != VERSION) {
+            return null;
+        }
+        int networkType = buffer.get(start + 1);
+        int outcome = buffer.get(start + 2);
+        int protocolLength = buffer.get(start + 3);
+        int privateDns = buffer.get(start + PRIVATE_DNS_OFFSET);
+        if (networkType < 0 || networkType >= NETWORK_TYPES.length
+                || outcome < 0 || outcome >= OUTCOMES.length
+                || protocolLength < 0 || protocolLength > PROTOCOL_CAPACITY
+                || privateDns < 0 || privateDns >= PRIVATE_DNS_MODES.length) {
+            return null;
+        }
+        long timestampMs = buffer.getLong(start + 4);
+        int latencyMs = buffer.getInt(start + 12);
+        String protocol = read(buffer, start + PROTOCOL_OFFSET, protocolLength, StandardCharsets.US_ASCII);
+        return new ProbeHistoryEntry(timestampMs, NETWORK_TYPES[networkType], PRIVATE_DNS_MODES[privateDns],
+                OUTCOMES[outcome], protocol, latencyMs);
+    }
+
+    @NonNull
+    private static byte[] truncate(@Nullable String value, Charset charset, int capacity) {
+        if (value == null || value.isEmpty()) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(charset);
+        if (bytes.length <= capacity) {
+            return bytes;
+        }
+        byte[] truncated = new byte[capacity];
+        System.arraycopy(bytes, 0, truncated, 0, capacity);
+        return truncated;
+    }
+
+    @Nullable
+    private static String read(ByteBuffer buffer, int offset, int length, Charset charset) {
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, charset);
+    }
+}
@@ -0,0 +1,160 @@
+package com.doubleangels.nextdnsmanagement.protocol.resolver;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 1035 wire-format encoder and decoder for single-question queries.
+ * It writes into and reads from caller-owned buffers so a verifier can reuse the
+ * same two buffers for every lookup.
+ */
+final class DnsMessageCodec {
+
+    static final int TYPE_A = 1;
+    static final int TYPE_AAAA = 28;
+    static final int RCODE_NOERROR = 0;
+    static final int RCODE_NXDOMAIN = 3;
+
+    private static final int CLASS_IN = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int FLAG_RESPONSE = 0x8000;
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+    private static final int RCODE_MASK = 0x000F;
+    private static final int POINTER_MASK = 0xC0;
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private DnsMessageCodec() {
+    }
+
+    /**
+     * Writes a recursive query for the name at the buffer's position.
+     */
+    static void encodeQuery(@NonNull ByteBuffer buffer, int id, @NonNull String name, int type) {
+        buffer.putShort((short) id);
+        buffer.putShort((short) FLAG_RECURSION_DESIRED);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        for (String label : name.split("\\.")) {
+            if (label.isEmpty()) {
+                continue;
+            }
+            byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+            if (bytes.length > MAX_LABEL_LENGTH) {
+                throw new IllegalArgumentException("DNS label too long: " + label);
+            }
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.put((byte) 0);
+        buffer.putShort((short) type);
+        buffer.putShort((short) CLASS_IN);
+    }
+
+    /**
+     * Decodes the response between the buffer's position and limit, collecting
+     * the A and AAAA records of the answer section and their smallest TTL.
+     *
+     * @throws IOException When the message is truncated, malformed, not a
+     *                     response, or answers a different query id.
+     */
+    @NonNull
+    static DnsResponse decodeResponse(@NonNull ByteBuffer buffer, int expectedId) throws IOException {
+        try {
+            if (buffer.remaining() < HEADER_SIZE) {
+                throw new IOException("DNS response shorter than its header.");
+            }
+            int id = buffer.getShort() & 0xFFFF;
+            int flags = buffer.getShort() & 0xFFFF;
+            int questionCount = buffer.getShort() & 0xFFFF;
+            int answerCount = buffer.getShort() & 0xFFFF;
+            buffer.getShort();
+            buffer.getShort();
+            if (id != expectedId) {
+                throw new IOException("DNS response id " + id + " does not match query id " + expectedId);
+            }
+            if ((flags & FLAG_RESPONSE) == 0) {
+                throw new IOException("DNS message is not a response.");
+            }
+
+            for (int i = 0; i < questionCount; i++) {
+                skipName(buffer);
+                skip(buffer, 4);
+            }
+
+            List<InetAddress> addresses = new ArrayList<>(answerCount);
+            long minTtlSeconds = DnsResponse.NO_TTL;
+            for (int i = 0; i < answerCount; i++) {
+                skipName(buffer);
+                int type = buffer.getShort() & 0xFFFF;
+                buffer.getShort();
+                long ttlSeconds = buffer.getInt() & 0xFFFFFFFFL;
+                int dataLength = buffer.getShort() & 0xFFFF;
+                if ((type == TYPE_A && dataLength == 4) || (type == TYPE_AAAA && dataLength == 16)) {
+                    byte[] address = new byte[dataLength];
+                    buffer.get(address);
+                    addresses.add(InetAddress.getByAddress(address));
+                    if (minTtlSeconds == DnsResponse.NO_TTL || ttlSeconds < minTtlSeconds) {
+                        minTtlSeconds = ttlSeconds;
+                    }
+                } else {
+                    skip(buffer, dataLength);
+                }
+            }
+            return new DnsResponse(flags & RCODE_MASK, addresses, minTtlSeconds);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("DNS response is truncated.", e);
+        }
+    }
+
+    private static void skipName(ByteBuffer buffer) throws IOException {
+        while (true) {
+            int length = buffer.get() & 0xFF;
+            if ((length & POINTER_MASK) == POINTER_MASK) {
+                // A compression pointer ends the name.
+                buffer.get();
+                return;
+            }
+            if ((length & POINTER_MASK) != 0) {
+                throw new IOException("Unsupported DNS label type.");
+            }
+            if (length == 0) {
+                return;
+            }
+            skip(buffer, length);
+        }
+    }
+
+    private static void skip(ByteBuffer buffer, int count) {
+        if (buffer.remaining() < count) {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(buffer.position() + count);
+    }
+
+    /**
+     * Decoded response code, addresses and address TTL of a DNS answer.
+     */
+    static final class DnsResponse {
+        static final long NO_TTL = -1L;
+
+        final int rcode;
+        final List<InetAddress> addresses;
+        // Smallest TTL among the addresses, or NO_TTL when there are none.
+        final long minTtlSeconds;
+
+        DnsResponse(int rcode, List<InetAddress> addresses, long minTtlSeconds) {
+            this.rcode = rcode;
+            this.addresses = addresses;
+            this.minTtlSeconds = minTtlSeconds;
+        }
+    }
+}
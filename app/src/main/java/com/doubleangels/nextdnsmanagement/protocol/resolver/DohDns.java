@@ -0,0 +1,324 @@
+package com.doubleangels.nextdnsmanagement.protocol.resolver;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.network.CallBudget;
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Opt-in {@link Dns} for the app's own HTTP clients that resolves over
+ * DNS-over-HTTPS instead of the system resolver, so a broken or filtering
+ * Private DNS setup, which is exactly what the app diagnoses, does not stall
+ * its own requests. The endpoint itself is reached through fixed bootstrap
+ * addresses. Answers are cached for their TTL, missing names for
+ * {@link #NEGATIVE_TTL_MS}, and any transport failure falls back to the
+ * system resolver.
+ */
+public final class DohDns implements Dns {
+
+    // Caps how long a long-TTL answer may outlive a network change.
+    static final long MAX_TTL_MS = 60 * 60 * 1000L;
+    static final long NEGATIVE_TTL_MS = 30 * 1000L;
+    // After a transport failure, go straight to the system resolver for a while
+    // rather than paying the DoH timeout on every lookup.
+    static final long FAILURE_BACKOFF_MS = 60 * 1000L;
+    static final int MAX_CACHE_ENTRIES = 64;
+    // Backstop in case a query's callback never arrives; the client's call
+    // timeout normally ends a slow lookup well before this.
+    private static final long LOOKUP_TIMEOUT_MS = 5_000L;
+    private static final int MAX_MESSAGE_SIZE = 4096;
+    // Each lookup holds two queries; a few lookups at once is all the app makes.
+    private static final int MAX_CONCURRENT_QUERIES = 8;
+    private static final MediaType DNS_MESSAGE = MediaType.get("application/dns-message");
+
+    private final OkHttpClient dohClient;
+    private final HttpUrl endpoint;
+    private final Dns fallback;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private volatile long suspendedUntilMs;
+
+    /**
+     * Creates a resolver for the endpoint in {@code R.string.doh_resolver_url},
+     * sharing the DNS check client's connection pool but not its dispatcher:
+     * a lookup runs on whichever thread is making the call it resolves for,
+     * often a shared dispatcher thread, and must not wait on queries queued
+     * behind that call.
+     */
+    @NonNull
+    public static DohDns create(@NonNull Context context) {
+        HttpUrl endpoint = HttpUrl.get(context.getString(R.string.doh_resolver_url));
+        List<InetAddress> bootstrap = new ArrayList<>();
+        for (String literal : context.getResources().getStringArray(R.array.doh_resolver_bootstrap_addresses)) {
+            try {
+                // Literals never reach a resolver.
+                bootstrap.add(InetAddress.getByName(literal));
+            } catch (UnknownHostException ignored) {
+                // Skip malformed entries; the endpoint falls back to the system resolver.
+            }
+        }
+        // A lookup sits in front of another call's connect, so it gets the short budget.
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_QUERIES);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_QUERIES);
+        OkHttpClient dohClient = HttpClients.getDnsCheckClient(CallBudget.STATUS).newBuilder()
+                .dispatcher(dispatcher)
+                .dns(bootstrapDns(endpoint.host(), bootstrap))
+                .build();
+        return new DohDns(dohClient, endpoint, Dns.SYSTEM, SystemClock::elapsedRealtime);
+    }
+
+    @VisibleForTesting
+    DohDns(@NonNull OkHttpClient dohClient, @NonNull HttpUrl endpoint, @NonNull Dns fallback,
+            @NonNull LongSupplier clock) {
+        this.dohClient = dohClient;
+        this.endpoint = endpoint;
+        this.fallback = fallback;
+        this.clock = clock;
+    }
+
+    @NonNull
+    @Override
+    public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+        String key = hostname.toLowerCase(Locale.ROOT);
+        long now = clock.getAsLong();
+        CacheEntry cached = cache.get(key);
+        if (cached != null && cached.expiresAtMs > now) {
+            if (cached.addresses.isEmpty()) {
+                throw new UnknownHostException(hostname + " does not exist (cached).");
+            }
+            return cached.addresses;
+        }
+        if (now < suspendedUntilMs) {
+            return fallback.lookup(hostname);
+        }
+        Answer answer;
+        try {
+            answer = resolve(key);
+        } catch (IOException e) {
+            suspendedUntilMs = now + FAILURE_BACKOFF_MS;
+            return fallback.lookup(hostname);
+        }
+        if (answer.addresses.isEmpty()) {
+            store(key, new CacheEntry(Collections.emptyList(), now + NEGATIVE_TTL_MS));
+            throw new UnknownHostException(hostname + " does not exist.");
+        }
+        if (answer.ttlMs > 0) {
+            store(key, new CacheEntry(answer.addresses, now + Math.min(answer.ttlMs, MAX_TTL_MS)));
+        }
+        return answer.addresses;
+    }
+
+    /**
+     * Drops every cached answer, e.g. after the default network changed.
+     */
+    public void clear() {
+        cache.clear();
+        suspendedUntilMs = 0L;
+    }
+
+    /**
+     * Queries A and AAAA in parallel over one multiplexed connection.
+     *
+     * @throws IOException When either query fails in transport or with an
+     *                     error other than NXDOMAIN, so the caller falls back.
+     */
+    private Answer resolve(String hostname) throws IOException {
+        Exchange ipv4 = new Exchange(hostname, DnsMessageCodec.TYPE_A);
+        Exchange ipv6 = new Exchange(hostname, DnsMessageCodec.TYPE_AAAA);
+        CountDownLatch done = new CountDownLatch(2);
+        ipv4.start(done);
+        ipv6.start(done);
+        try {
+            if (!done.await(LOOKUP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                ipv4.call.cancel();
+                ipv6.call.cancel();
+                throw new IOException("DoH lookup of " + hostname + " timed out.");
+            }
+        } catch (InterruptedException e) {
+            ipv4.call.cancel();
+            ipv6.call.cancel();
+            Thread.currentThread().interrupt();
+            throw new IOException("DoH lookup of " + hostname + " was interrupted.", e);
+        }
+        DnsMessageCodec.DnsResponse v4 = ipv4.result();
+        DnsMessageCodec.DnsResponse v6 = ipv6.result();
+        List<InetAddress> addresses = new ArrayList<>(v4.addresses.size() + v6.addresses.size());
+        addresses.addAll(v4.addresses);
+        addresses.addAll(v6.addresses);
+        long ttlSeconds = minTtl(v4.minTtlSeconds, v6.minTtlSeconds);
+        return new Answer(Collections.unmodifiableList(addresses),
+                ttlSeconds == DnsMessageCodec.DnsResponse.NO_TTL ? 0L : ttlSeconds * 1000L);
+    }
+
+    private void store(String key, CacheEntry entry) {
+        if (cache.size() >= MAX_CACHE_ENTRIES) {
+            long now = clock.getAsLong();
+            Iterator<CacheEntry> iterator = cache.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expiresAtMs <= now) {
+                    iterator.remove();
+                }
+            }
+            if (cache.size() >= MAX_CACHE_ENTRIES) {
+                // Everything is live; the app only talks to a handful of hosts,
+                // so starting over is cheaper than tracking recency.
+                cache.clear();
+            }
+        }
+        cache.put(key, entry);
+    }
+
+    private static long minTtl(long first, long second) {
+        if (first == DnsMessageCodec.DnsResponse.NO_TTL) {
+            return second;
+        }
+        if (second == DnsMessageCodec.DnsResponse.NO_TTL) {
+            return first;
+        }
+        return Math.min(first, second);
+    }
+
+    /**
+     * Resolves the DoH endpoint's own host to the bootstrap addresses and
+     * anything else through the system resolver.
+     */
+    @NonNull
+    static Dns bootstrapDns(@NonNull String endpointHost, @NonNull List<InetAddress> bootstrap) {
+        List<InetAddress> addresses = Collections.unmodifiableList(new ArrayList<>(bootstrap));
+        return hostname -> addresses.isEmpty() || !endpointHost.equalsIgnoreCase(hostname)
+                ? Dns.SYSTEM.lookup(hostname)
+                : addresses;
+    }
+
+    /**
+     * One query and its outcome, completed on a thread of the resolver's own
+     * dispatcher.
+     */
+    private final class Exchange implements Callback {
+        private final int id = random.nextInt(0x10000);
+        private final Call call;
+        private CountDownLatch done;
+        private volatile DnsMessageCodec.DnsResponse response;
+        private volatile IOException failure;
+
+        Exchange(String hostname, int type) {
+            ByteBuffer query = ByteBuffer.allocate(512);
+            DnsMessageCodec.encodeQuery(query, id, hostname, type);
+            Request request = new Request.Builder()
+                    .url(endpoint)
+                    .header("Accept", "application/dns-message")
+                    .post(RequestBody.create(query.array(), DNS_MESSAGE, 0, query.position()))
+                    .build();
+            this.call = dohClient.newCall(request);
+        }
+
+        void start(CountDownLatch done) {
+            this.done = done;
+            call.enqueue(this);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+            try (response) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("DoH response was not successful: " + response.code());
+                }
+                ResponseBody body = response.body();
+                if (body == null) {
+                    throw new IOException("DoH response body is null.");
+                }
+                byte[] message = body.source().readByteArray();
+                if (message.length > MAX_MESSAGE_SIZE) {
+                    throw new IOException("DoH response exceeds " + MAX_MESSAGE_SIZE + " bytes.");
+                }
+                DnsMessageCodec.DnsResponse decoded = DnsMessageCodec.decodeResponse(ByteBuffer.wrap(message), id);
+                if (decoded.rcode != DnsMessageCodec.RCODE_NOERROR
+                        && decoded.rcode != DnsMessageCodec.RCODE_NXDOMAIN) {
+                    throw new IOException("DoH answer has rcode " + decoded.rcode + ".");
+                }
+                this.response = decoded;
+            } catch (IOException e) {
+                this.failure = e;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            this.failure = e;
+            done.countDown();
+        }
+
+        @NonNull
+        DnsMessageCodec.DnsResponse result() throws IOException {
+            IOException error = failure;
+            if (error != null) {
+                throw error;
+            }
+            DnsMessageCodec.DnsResponse decoded = response;
+            if (decoded == null) {
+                throw new IOException("DoH answer is missing.");
+            }
+            return decoded;
+        }
+    }
+
+    private static final class Answer {
+        final List<InetAddress> addresses;
+        // Zero when the answer must not be cached.
+        final long ttlMs;
+
+        Answer(List<InetAddress> addresses, long ttlMs) {
+            this.addresses = addresses;
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    private static final class CacheEntry {
+        // Empty for a cached NXDOMAIN or empty answer.
+        final List<InetAddress> addresses;
+        final long expiresAtMs;
+
+        CacheEntry(@Nullable List<InetAddress> addresses, long expiresAtMs) {
+            this.addresses = addresses != null ? addresses : Collections.emptyList();
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.doubleangels.nextdnsmanagement.protocol.resolver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Outcome of resolving the canary name over one encrypted DNS transport.
+ */
+public final class ResolverResult {
+
+    public enum Transport {
+        DOH,
+        DOT
+    }
+
+    public static final int NO_RCODE = -1;
+
+    private final Transport transport;
+    private final String serverName;
+    private final int rcode;
+    private final int addressCount;
+    private final long latencyMs;
+    private final Exception error;
+
+    ResolverResult(@NonNull Transport transport, @NonNull String serverName, int rcode, int addressCount,
+            long latencyMs, @Nullable Exception error) {
+        this.transport = transport;
+        this.serverName = serverName;
+        this.rcode = rcode;
+        this.addressCount = addressCount;
+        this.latencyMs = latencyMs;
+        this.error = error;
+    }
+
+    @NonNull
+    public Transport getTransport() {
+        return transport;
+    }
+
+    @NonNull
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * @return The DNS response code, or {@link #NO_RCODE} when no response arrived.
+     */
+    public int getRcode() {
+        return rcode;
+    }
+
+    public int getAddressCount() {
+        return addressCount;
+    }
+
+    /**
+     * @return Time from starting the exchange, connection included, to the
+     *         decoded answer or the failure.
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    @Nullable
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * @return Whether the resolver answered NOERROR with at least one address.
+     */
+    public boolean isSuccessful() {
+        return error == null && rcode == DnsMessageCodec.RCODE_NOERROR && addressCount > 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ResolverResult{transport=" + transport
+                + ", serverName=" + serverName
+                + ", rcode=" + rcode
+                + ", addressCount=" + addressCount
+                + ", latencyMs=" + latencyMs
+                + ", error=" + error + '}';
+    }
+}
@@ -0,0 +1,320 @@
+package com.doubleangels.nextdnsmanagement.protocol.resolver;
+
+import android.content.Context;
+import android.net.Network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * Resolves a canary name directly against the configured private DNS server over
+ * DNS-over-HTTPS and DNS-over-TLS, independent of the test.nextdns.io page. The
+ * queries are encoded by {@link DnsMessageCodec} into two buffers owned by the
+ * verifier's single worker thread, so repeated checks allocate almost nothing.
+ * One verifier serves the whole process: DoH clients bound to a network are
+ * kept per network handle so their connections are reused, and a check of the
+ * same server on the same network is answered from the last successful result
+ * of each transport for {@link #RESULT_TTL_MS}. Failures are never reused, so a
+ * flaky handshake is retried by the next check.
+ */
+public final class ResolverVerifier {
+
+    public interface Callback {
+        /**
+         * Called on a background thread once per transport, successful or not.
+         */
+        void onResult(@NonNull ResolverResult result);
+    }
+
+    private static final int DOT_PORT = 853;
+    private static final int TIMEOUT_MS = 5_000;
+    private static final int MAX_MESSAGE_SIZE = 4096;
+    // DNS-over-TLS frames every message with a two-byte length.
+    private static final int DOT_LENGTH_PREFIX = 2;
+    private static final MediaType DNS_MESSAGE = MediaType.get("application/dns-message");
+    private static final String NEXTDNS_PRIVATE_DNS_SUFFIX = ".dns.nextdns.io";
+    static final long RESULT_TTL_MS = 5 * 60 * 1000L;
+    // Networks are few, but handles are never reused, so old clients must go.
+    private static final int MAX_NETWORK_CLIENTS = 4;
+    private static final int NETWORK_POOL_MAX_IDLE_CONNECTIONS = 1;
+    private static final long NETWORK_POOL_KEEP_ALIVE_MINUTES = 5L;
+
+    private static volatile ResolverVerifier instance;
+
+    private final String canaryName;
+    private final OkHttpClient httpClient;
+    private final SecureRandom random = new SecureRandom();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "resolver-verifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Owned by the worker thread.
+    private final ByteBuffer queryBuffer = ByteBuffer.allocate(DOT_LENGTH_PREFIX + 512);
+    private final ByteBuffer responseBuffer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
+    private final Map<Long, OkHttpClient> networkClients =
+            new LinkedHashMap<Long, OkHttpClient>(MAX_NETWORK_CLIENTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, OkHttpClient> eldest) {
+                    if (size() <= MAX_NETWORK_CLIENTS) {
+                        return false;
+                    }
+                    eldest.getValue().connectionPool().evictAll();
+                    return true;
+                }
+            };
+    // Owned by the worker thread; successes of the check identified by lastCheckKey.
+    private String lastCheckKey;
+    private final Map<ResolverResult.Transport, CachedResult> lastSuccesses =
+            new EnumMap<>(ResolverResult.Transport.class);
+
+    @NonNull
+    public static ResolverVerifier getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (ResolverVerifier.class) {
+                if (instance == null) {
+                    instance = new ResolverVerifier(context.getApplicationContext()
+                            .getString(R.string.resolver_canary_name), HttpClients.getDnsCheckClient());
+                }
+            }
+        }
+        return instance;
+    }
+
+    ResolverVerifier(@NonNull String canaryName, @NonNull OkHttpClient httpClient) {
+        this.canaryName = canaryName;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Resolves the canary over DoH and then DoT against the server, reporting each
+     * transport's result as soon as it is known. A transport that succeeded for
+     * the same server on the same network in the last {@link #RESULT_TTL_MS}
+     * reports that result again instead.
+     *
+     * @param network The network to resolve over, or null for the default route.
+     */
+    public void verify(@Nullable Network network, @NonNull String serverName, @NonNull Callback callback) {
+        worker.execute(() -> {
+            String checkKey = (network != null ? network.getNetworkHandle() : 0L) + "/" + serverName;
+            if (!checkKey.equals(lastCheckKey)) {
+                lastCheckKey = checkKey;
+                lastSuccesses.clear();
+            }
+            callback.onResult(resultOf(ResolverResult.Transport.DOH, network, serverName));
+            callback.onResult(resultOf(ResolverResult.Transport.DOT, network, serverName));
+        });
+    }
+
+    @WorkerThread
+    private ResolverResult resultOf(ResolverResult.Transport transport, @Nullable Network network,
+            String serverName) {
+        CachedResult cached = lastSuccesses.get(transport);
+        if (cached != null && System.nanoTime() - cached.checkedAtNanos < RESULT_TTL_MS * 1_000_000L) {
+            return cached.result;
+        }
+        ResolverResult result = resolve(transport, network, serverName);
+        if (result.isSuccessful()) {
+            lastSuccesses.put(transport, new CachedResult(result, System.nanoTime()));
+        } else {
+            lastSuccesses.remove(transport);
+        }
+        return result;
+    }
+
+    @WorkerThread
+    private ResolverResult resolve(ResolverResult.Transport transport, @Nullable Network network,
+            String serverName) {
+        int id = random.nextInt(0x10000);
+        long startNanos = System.nanoTime();
+        try {
+            queryBuffer.clear();
+            queryBuffer.position(DOT_LENGTH_PREFIX);
+            DnsMessageCodec.encodeQuery(queryBuffer, id, canaryName, DnsMessageCodec.TYPE_A);
+            queryBuffer.putShort(0, (short) (queryBuffer.position() - DOT_LENGTH_PREFIX));
+            queryBuffer.flip();
+
+            responseBuffer.clear();
+            if (transport == ResolverResult.Transport.DOH) {
+                queryBuffer.position(DOT_LENGTH_PREFIX);
+                exchangeOverHttps(network, serverName);
+            } else {
+                exchangeOverTls(network, serverName);
+            }
+            responseBuffer.flip();
+            DnsMessageCodec.DnsResponse response = DnsMessageCodec.decodeResponse(responseBuffer, id);
+            return new ResolverResult(transport, serverName, response.rcode, response.addresses.size(),
+                    elapsedMs(startNanos), null);
+        } catch (Exception e) {
+            return new ResolverResult(transport, serverName, ResolverResult.NO_RCODE, 0, elapsedMs(startNanos), e);
+        }
+    }
+
+    private void exchangeOverHttps(@Nullable Network network, String serverName) throws IOException {
+        OkHttpClient client = network != null ? clientFor(network) : httpClient;
+        RequestBody body = RequestBody.create(queryBuffer.array(),
+                DNS_MESSAGE,
+                queryBuffer.arrayOffset() + queryBuffer.position(),
+                queryBuffer.remaining());
+        Request request = new Request.Builder()
+                .url(dohUrl(serverName))
+                .header("Accept", "application/dns-message")
+                .post(body)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("DoH response was not successful: " + response.code());
+            }
+            ResponseBody responseBody = response.body();
+            if (responseBody == null) {
+                throw new IOException("DoH response body is null.");
+            }
+            BufferedSource source = responseBody.source();
+            while (responseBuffer.hasRemaining() && source.read(responseBuffer) != -1) {
+                // Keep reading until the message is complete or the buffer is full.
+            }
+            if (!source.exhausted()) {
+                throw new IOException("DoH response exceeds " + MAX_MESSAGE_SIZE + " bytes.");
+            }
+        }
+    }
+
+    @WorkerThread
+    @NonNull
+    private OkHttpClient clientFor(@NonNull Network network) {
+        OkHttpClient client = networkClients.get(network.getNetworkHandle());
+        if (client == null) {
+            // Sockets bound to one network stay out of the shared pool.
+            client = httpClient.newBuilder()
+                    .socketFactory(network.getSocketFactory())
+                    .dns(hostname -> Arrays.asList(network.getAllByName(hostname)))
+                    .connectionPool(new ConnectionPool(NETWORK_POOL_MAX_IDLE_CONNECTIONS,
+                            NETWORK_POOL_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .build();
+            networkClients.put(network.getNetworkHandle(), client);
+        }
+        return client;
+    }
+
+    private void exchangeOverTls(@Nullable Network network, String serverName) throws IOException {
+        InetAddress address = network != null
+                ? network.getAllByName(serverName)[0]
+                : InetAddress.getAllByName(serverName)[0];
+        Socket socket = network != null ? network.getSocketFactory().createSocket() : new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, DOT_PORT), TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            SSLSocketFactory tlsFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+            try (SSLSocket tlsSocket = (SSLSocket) tlsFactory.createSocket(socket, serverName, DOT_PORT, true)) {
+                tlsSocket.startHandshake();
+                if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(serverName, tlsSocket.getSession())) {
+                    throw new IOException("DoT certificate does not match " + serverName);
+                }
+                OutputStream output = tlsSocket.getOutputStream();
+                output.write(queryBuffer.array(), queryBuffer.arrayOffset(), queryBuffer.limit());
+                output.flush();
+
+                DataInputStream input = new DataInputStream(tlsSocket.getInputStream());
+                int length = input.readUnsignedShort();
+                if (length > responseBuffer.capacity()) {
+                    throw new IOException("DoT response exceeds " + MAX_MESSAGE_SIZE + " bytes.");
+                }
+                readFully(input, length);
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private void readFully(InputStream input, int length) throws IOException {
+        byte[] array = responseBuffer.array();
+        int offset = responseBuffer.arrayOffset();
+        int read = 0;
+        while (read < length) {
+            int count = input.read(array, offset + read, length - read);
+            if (count == -1) {
+                throw new IOException("DoT connection closed mid-response.");
+            }
+            read += count;
+        }
+        responseBuffer.position(length);
+    }
+
+    /**
+     * NextDNS private DNS hostnames are {@code <id>.dns.nextdns.io}, optionally
+     * prefixed with a device name ({@code Device--Name-<id>}); their DoH endpoint is
+     * {@code https://dns.nextdns.io/<id>[/<device>]}. Other servers are assumed to
+     * serve RFC 8484's conventional {@code /dns-query} path.
+     */
+    @NonNull
+    static String dohUrl(@NonNull String serverName) {
+        String host = serverName.toLowerCase(Locale.ROOT);
+        if (!host.endsWith(NEXTDNS_PRIVATE_DNS_SUFFIX)) {
+            return "https://" + host + "/dns-query";
+        }
+        String label = serverName.substring(0, serverName.length() - NEXTDNS_PRIVATE_DNS_SUFFIX.length());
+        int separator = label.lastIndexOf('-');
+        if (separator <= 0) {
+            return "https://dns.nextdns.io/" + label.toLowerCase(Locale.ROOT);
+        }
+        String id = label.substring(separator + 1).toLowerCase(Locale.ROOT);
+        String device = label.substring(0, separator).replace("--", " ");
+        return new HttpUrl.Builder()
+                .scheme("https")
+                .host("dns.nextdns.io")
+                .addPathSegment(id)
+                .addPathSegment(device)
+                .build()
+                .toString();
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    private static final class CachedResult {
+        final ResolverResult result;
+        final long checkedAtNanos;
+
+        CachedResult(ResolverResult result, long checkedAtNanos) {
+            this.result = result;
+            this.checkedAtNanos = checkedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.doubleangels.nextdnsmanagement.tile;
+
+import android.graphics.drawable.Icon;
+import android.os.Handler;
+import android.os.Looper;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivityMonitor;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivitySnapshot;
+import com.doubleangels.nextdnsmanagement.protocol.IndicatorState;
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+import com.doubleangels.nextdnsmanagement.widget.StatusWidgetProvider;
+import com.doubleangels.nextdnsmanagement.widget.StatusWidgetStore;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quick Settings tile showing the NextDNS status. Opening the shade only reads
+ * what is already known; tapping runs one headless probe through
+ * {@link ConnectivityMonitor#verify(ConnectivityMonitor.Listener, boolean)} on
+ * the DNS check client and shows the answer, or the last known state once the
+ * latency budget runs out. No activity, layout or encrypted preferences are
+ * involved.
+ */
+public class StatusTileService extends TileService {
+
+    // How long a tap may leave the tile saying "Checking".
+    private static final long PROBE_BUDGET_MS = 3_000L;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Identifies the latest tap, so a slow answer cannot overwrite a newer one.
+    private final AtomicInteger checkGeneration = new AtomicInteger();
+
+    @Override
+    public void onStartListening() {
+        super.onStartListening();
+        try {
+            render(lastKnownState(ConnectivityMonitor.getInstance(this), new StatusWidgetStore(this)), false);
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+
+    @Override
+    public void onClick() {
+        super.onClick();
+        try {
+            ConnectivityMonitor monitor = ConnectivityMonitor.getInstance(this);
+            StatusWidgetStore store = new StatusWidgetStore(this);
+            // Taps share the widget's budget, so hammering either costs one probe.
+            if (!store.tryAcquireRefresh(true)) {
+                render(lastKnownState(monitor, store), false);
+                return;
+            }
+            int generation = checkGeneration.incrementAndGet();
+            render(null, true);
+            mainHandler.postDelayed(() -> {
+                if (checkGeneration.compareAndSet(generation, generation + 1)) {
+                    render(lastKnownState(monitor, store), false);
+                }
+            }, PROBE_BUDGET_MS);
+            monitor.verify(snapshot -> mainHandler.post(() -> {
+                if (checkGeneration.compareAndSet(generation, generation + 1)) {
+                    render(snapshot.getIndicatorState(), false);
+                    StatusWidgetProvider.updateAll(getApplicationContext(), snapshot);
+                }
+            }), true);
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+
+    /**
+     * @return The monitor's current state, or else the one the widget and tile
+     *         last showed, or null when neither is known.
+     */
+    @Nullable
+    private static IndicatorState lastKnownState(ConnectivityMonitor monitor, StatusWidgetStore store) {
+        ConnectivitySnapshot snapshot = monitor.getSnapshot();
+        return snapshot != null ? snapshot.getIndicatorState() : store.getState();
+    }
+
+    /**
+     * @param state    The state to show, or null when it is unknown.
+     * @param checking Whether a probe started by a tap is still running.
+     */
+    private void render(@Nullable IndicatorState state, boolean checking) {
+        Tile tile = getQsTile();
+        if (tile == null) {
+            return;
+        }
+        if (checking) {
+            tile.setSubtitle(getString(R.string.widget_status_checking));
+        } else if (state != null) {
+            tile.setIcon(Icon.createWithResource(this, state.getDrawableResId()));
+            tile.setSubtitle(getString(state.getLabelResId()));
+            tile.setState(state.equals(IndicatorState.PROBE_SECURE) || state.equals(IndicatorState.PRIVATE_DNS_NEXTDNS)
+                    ? Tile.STATE_ACTIVE
+                    : Tile.STATE_INACTIVE);
+        } else {
+            tile.setSubtitle(null);
+            tile.setState(Tile.STATE_INACTIVE);
+        }
+        tile.updateTile();
+    }
+}
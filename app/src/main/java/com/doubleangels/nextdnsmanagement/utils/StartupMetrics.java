@@ -0,0 +1,62 @@
+package com.doubleangels.nextdnsmanagement.utils;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Records how long after process start the app reached each startup milestone.
+ * Only the first occurrence of a milestone counts, so later activity restarts do
+ * not overwrite the cold-start numbers.
+ */
+public final class StartupMetrics {
+
+    public enum Milestone {
+        /** Encrypted SharedPreferences finished initializing. */
+        PREFERENCES_READY,
+        /** The warm-up probe connected to test.nextdns.io and got an answer. */
+        PROBE_WARMED,
+        /** The status icon first showed a probe-verified colour. */
+        FIRST_VERIFIED_INDICATOR,
+        /** The WebView first made NextDNS page content visible. */
+        FIRST_CONTENTFUL_PAINT
+    }
+
+    public static final long NOT_REACHED = -1L;
+
+    private static final String TAG = "StartupMetrics";
+    private static final Map<Milestone, Long> MILESTONES = new EnumMap<>(Milestone.class);
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * Records the milestone unless it was already reached in this process.
+     */
+    public static void mark(@NonNull Milestone milestone) {
+        long elapsedMs = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        synchronized (MILESTONES) {
+            if (MILESTONES.containsKey(milestone)) {
+                return;
+            }
+            MILESTONES.put(milestone, elapsedMs);
+        }
+        Log.i(TAG, milestone + " reached " + elapsedMs + " ms after process start");
+    }
+
+    /**
+     * @return Milliseconds from process start to the milestone, or
+     *         {@link #NOT_REACHED}.
+     */
+    public static long getElapsedMs(@NonNull Milestone milestone) {
+        synchronized (MILESTONES) {
+            Long elapsedMs = MILESTONES.get(milestone);
+            return elapsedMs != null ? elapsedMs : NOT_REACHED;
+        }
+    }
+}
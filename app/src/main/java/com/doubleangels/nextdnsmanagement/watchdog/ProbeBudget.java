@@ -0,0 +1,77 @@
+package com.doubleangels.nextdnsmanagement.watchdog;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.LongSupplier;
+
+/**
+ * Hard cap on how many probes may start within a sliding window. Unlike the
+ * backoff in {@code ProbeScheduler}, which only slows down after failures, this
+ * bounds successful probes too, so no amount of network churn can make the
+ * watchdog probe more than {@code maxProbes} times per window.
+ */
+final class ProbeBudget {
+
+    private final int maxProbes;
+    private final long windowMs;
+    private final LongSupplier clock;
+    // Start times of the probes granted within the window, oldest first.
+    private final ArrayDeque<Long> grants = new ArrayDeque<>();
+
+    ProbeBudget(int maxProbes, long windowMs, @NonNull LongSupplier clock, @NonNull long[] restoredGrants) {
+        this.maxProbes = maxProbes;
+        this.windowMs = windowMs;
+        this.clock = clock;
+        for (long grant : restoredGrants) {
+            grants.addLast(grant);
+        }
+    }
+
+    /**
+     * Takes one probe from the budget if any is left.
+     *
+     * @return Whether the caller may probe now.
+     */
+    synchronized boolean tryAcquire() {
+        long now = clock.getAsLong();
+        expire(now);
+        if (grants.size() >= maxProbes) {
+            return false;
+        }
+        grants.addLast(now);
+        return true;
+    }
+
+    synchronized int remaining() {
+        expire(clock.getAsLong());
+        return maxProbes - grants.size();
+    }
+
+    /**
+     * @return The grants still inside the window, for persisting across
+     *         process restarts.
+     */
+    @NonNull
+    synchronized long[] toArray() {
+        expire(clock.getAsLong());
+        long[] array = new long[grants.size()];
+        int i = 0;
+        for (long grant : grants) {
+            array[i++] = grant;
+        }
+        return array;
+    }
+
+    private void expire(long now) {
+        Iterator<Long> iterator = grants.iterator();
+        while (iterator.hasNext()) {
+            long grant = iterator.next();
+            // Grants from a clock that has since moved backwards are dropped too.
+            if (now - grant >= windowMs || grant > now) {
+                iterator.remove();
+            }
+        }
+    }
+}
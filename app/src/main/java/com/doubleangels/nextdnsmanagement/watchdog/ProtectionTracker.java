@@ -0,0 +1,92 @@
+package com.doubleangels.nextdnsmanagement.watchdog;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides when {@link ProtectionWatchdog} posts or clears its notification. A
+ * conclusive answer, such as a probe that reached NextDNS or one that saw
+ * another resolver, is acted on at once. A probe that failed or timed out says
+ * nothing about the resolver, since a network that is still coming up looks
+ * the same, so only {@link #FAILURES_BEFORE_ALERT} such probes in a row on one
+ * network count as losing protection. Not thread-safe; the watchdog keeps the
+ * state in its preferences and uses it on its own thread.
+ */
+final class ProtectionTracker {
+
+    static final int FAILURES_BEFORE_ALERT = 3;
+    static final long NO_NETWORK = 0L;
+
+    enum Verdict {
+        PROTECTED,
+        UNPROTECTED,
+        /** The probe failed or timed out. */
+        UNKNOWN
+    }
+
+    enum Action {
+        NONE,
+        /** Post the "protection lost" notification. */
+        ALERT,
+        /** Protection is back; remove the notification. */
+        CLEAR,
+        /** Inconclusive; probe again later if the budget allows. */
+        RETRY
+    }
+
+    private boolean wasProtected;
+    private long failingNetworkHandle;
+    private int consecutiveFailures;
+
+    ProtectionTracker(boolean wasProtected, long failingNetworkHandle, int consecutiveFailures) {
+        this.wasProtected = wasProtected;
+        this.failingNetworkHandle = failingNetworkHandle;
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    /**
+     * Records what the watchdog learned about a network and returns what it
+     * should do about it. Devices that were never protected are left alone.
+     */
+    @NonNull
+    Action onVerdict(long networkHandle, @NonNull Verdict verdict) {
+        if (verdict != Verdict.UNKNOWN) {
+            failingNetworkHandle = NO_NETWORK;
+            consecutiveFailures = 0;
+            return settle(verdict == Verdict.PROTECTED);
+        }
+        if (!wasProtected) {
+            return Action.NONE;
+        }
+        if (networkHandle != failingNetworkHandle) {
+            failingNetworkHandle = networkHandle;
+            consecutiveFailures = 0;
+        }
+        consecutiveFailures++;
+        if (consecutiveFailures < FAILURES_BEFORE_ALERT) {
+            return Action.RETRY;
+        }
+        failingNetworkHandle = NO_NETWORK;
+        consecutiveFailures = 0;
+        return settle(false);
+    }
+
+    boolean wasProtected() {
+        return wasProtected;
+    }
+
+    long getFailingNetworkHandle() {
+        return failingNetworkHandle;
+    }
+
+    int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private Action settle(boolean isProtected) {
+        if (isProtected == wasProtected) {
+            return Action.NONE;
+        }
+        wasProtected = isProtected;
+        return isProtected ? Action.CLEAR : Action.ALERT;
+    }
+}
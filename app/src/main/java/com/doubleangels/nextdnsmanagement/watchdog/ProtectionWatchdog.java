@@ -0,0 +1,408 @@
+package com.doubleangels.nextdnsmanagement.watchdog;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivityMonitor;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivitySnapshot;
+import com.doubleangels.nextdnsmanagement.protocol.IndicatorState;
+import com.doubleangels.nextdnsmanagement.protocol.ProbeResult;
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optional background check that notices when the device silently stops using
+ * NextDNS, e.g. Private DNS was switched off or a captive portal intercepts DNS,
+ * and posts a notification on the "general" channel. It never polls: it is
+ * woken by {@link ConnectivityMonitor} snapshots while the process runs and by
+ * a PendingIntent network callback ({@link WatchdogReceiver}) after it has been
+ * killed. Bursts of events are coalesced into one evaluation, link state that
+ * already shows the problem needs no probe, and probes are capped per hour by
+ * a persisted {@link ProbeBudget}. A probe that fails or times out is retried
+ * within that budget rather than reported; see {@link ProtectionTracker}.
+ */
+public final class ProtectionWatchdog {
+
+    static final int MAX_PROBES_PER_HOUR = 4;
+    private static final long BUDGET_WINDOW_MS = 60 * 60 * 1000L;
+    // Network changes tend to arrive in bursts; evaluate once they settle.
+    private static final long COALESCE_MS = 3_000L;
+    // Leaves headroom below the ten seconds a woken receiver may run.
+    private static final long VERIFY_TIMEOUT_MS = 5_000L;
+    // Gives a network that is still coming up time to settle before the next probe.
+    private static final long RETRY_DELAY_MS = 60_000L;
+
+    private static final String CHANNEL_ID = "general";
+    private static final String CHANNEL_NAME = "General";
+    private static final int NOTIFICATION_ID = 0x4E444E53;
+
+    private static final String PREF_NAME = "protection_watchdog";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_WAS_PROTECTED = "was_protected";
+    private static final String KEY_FAILING_NETWORK = "failing_network";
+    private static final String KEY_CONSECUTIVE_FAILURES = "consecutive_failures";
+    private static final String KEY_PROBE_GRANTS = "probe_grants";
+
+    private static volatile ProtectionWatchdog instance;
+
+    private final Context appContext;
+    private final SharedPreferences preferences;
+    private final ConnectivityMonitor monitor;
+    private final ProbeBudget probeBudget;
+    private final ScheduledExecutorService executor;
+    private final ConnectivityMonitor.Listener observer = snapshot -> requestEvaluation(null);
+
+    private final AtomicBoolean observing = new AtomicBoolean();
+    // Guarded by this.
+    private ScheduledFuture<?> pendingEvaluation;
+    private final List<Runnable> evaluationWaiters = new ArrayList<>();
+
+    @VisibleForTesting
+    ProtectionWatchdog(@NonNull Context context, @NonNull ConnectivityMonitor monitor,
+            @NonNull ScheduledExecutorService executor) {
+        this.appContext = context.getApplicationContext();
+        this.preferences = appContext.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        this.monitor = monitor;
+        this.executor = executor;
+        this.probeBudget = new ProbeBudget(MAX_PROBES_PER_HOUR, BUDGET_WINDOW_MS, System::currentTimeMillis,
+                decodeGrants(preferences.getString(KEY_PROBE_GRANTS, "")));
+    }
+
+    @NonNull
+    public static ProtectionWatchdog getInstance(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (ProtectionWatchdog.class) {
+                if (instance == null) {
+                    instance = new ProtectionWatchdog(context, ConnectivityMonitor.getInstance(context),
+                            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                                Thread thread = new Thread(runnable, "protection-watchdog");
+                                thread.setDaemon(true);
+                                return thread;
+                            }));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Turns the watchdog on or off. The setting lives in the encrypted
+     * preferences; a plain copy is kept here so {@link WatchdogReceiver} can
+     * check it without initializing encrypted storage.
+     */
+    public void setEnabled(boolean enabled) {
+        preferences.edit().putBoolean(KEY_ENABLED, enabled).apply();
+        try {
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (enabled) {
+                if (connectivityManager != null) {
+                    // Survives process death, unlike the monitor's callback.
+                    connectivityManager.registerNetworkCallback(new NetworkRequest.Builder()
+                            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                            .build(), wakeUpIntent());
+                }
+                startObserving();
+            } else {
+                if (connectivityManager != null) {
+                    connectivityManager.unregisterNetworkCallback(wakeUpIntent());
+                }
+                stopObserving();
+                preferences.edit()
+                        .remove(KEY_WAS_PROTECTED)
+                        .remove(KEY_FAILING_NETWORK)
+                        .remove(KEY_CONSECUTIVE_FAILURES)
+                        .apply();
+                NotificationManagerCompat.from(appContext).cancel(NOTIFICATION_ID);
+            }
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return preferences.getBoolean(KEY_ENABLED, false);
+    }
+
+    /**
+     * Schedules an evaluation unless one is already pending, in which case the
+     * events are coalesced into it. The pending evaluation is not pushed back,
+     * so continuous churn still gets evaluated every {@link #COALESCE_MS}.
+     *
+     * @param whenDone Run on the watchdog thread after the evaluation, e.g. to
+     *                 finish a receiver's pending result.
+     */
+    void requestEvaluation(@Nullable Runnable whenDone) {
+        if (isEnabled()) {
+            startObserving();
+        }
+        synchronized (this) {
+            if (whenDone != null) {
+                evaluationWaiters.add(whenDone);
+            }
+            if (!isEnabled()) {
+                runWaiters();
+                return;
+            }
+            scheduleEvaluation(COALESCE_MS);
+        }
+    }
+
+    // Called with this held. A pending retry is brought forward by new events.
+    private void scheduleEvaluation(long delayMs) {
+        if (pendingEvaluation != null) {
+            if (pendingEvaluation.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                return;
+            }
+            pendingEvaluation.cancel(false);
+        }
+        pendingEvaluation = executor.schedule(this::evaluate, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void evaluate() {
+        synchronized (this) {
+            pendingEvaluation = null;
+        }
+        try {
+            monitor.refresh();
+            ConnectivitySnapshot snapshot = monitor.getSnapshot();
+            if (snapshot == null || !snapshot.isConnected()) {
+                // Nothing to protect without a network, and nothing to probe over.
+                finishEvaluation();
+                return;
+            }
+            if (snapshot.isVerified()
+                    || snapshot.getIndicatorState() != IndicatorState.PRIVATE_DNS_NEXTDNS) {
+                // Already probed, or Private DNS is off or elsewhere, which needs no probe.
+                handleSnapshot(snapshot);
+                finishEvaluation();
+                return;
+            }
+            if (!tryAcquireProbe()) {
+                finishEvaluation();
+                return;
+            }
+            AtomicBoolean answered = new AtomicBoolean();
+            long networkHandle = snapshot.getNetworkHandle();
+            ScheduledFuture<?> timeout = executor.schedule(() -> {
+                if (answered.compareAndSet(false, true)) {
+                    ConnectivitySnapshot current = monitor.getSnapshot();
+                    if (current != null && current.getNetworkHandle() == networkHandle) {
+                        handleVerdict(networkHandle, ProtectionTracker.Verdict.UNKNOWN,
+                                current.getIndicatorState());
+                    }
+                    finishEvaluation();
+                }
+            }, VERIFY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            monitor.verify(result -> {
+                if (answered.compareAndSet(false, true)) {
+                    timeout.cancel(false);
+                    executor.execute(() -> {
+                        ConnectivitySnapshot current = monitor.getSnapshot();
+                        // The answer is about the network that was probed; once another one is
+                        // the default, the snapshot that announced it queues its own evaluation.
+                        if (result.isConnected() && current != null
+                                && current.getNetworkHandle() == result.getNetworkHandle()) {
+                            handleSnapshot(result);
+                        }
+                        finishEvaluation();
+                    });
+                }
+            });
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+            finishEvaluation();
+        }
+    }
+
+    private boolean tryAcquireProbe() {
+        boolean granted = probeBudget.tryAcquire();
+        if (granted) {
+            preferences.edit().putString(KEY_PROBE_GRANTS, encodeGrants(probeBudget.toArray())).apply();
+        }
+        return granted;
+    }
+
+    private void handleSnapshot(@NonNull ConnectivitySnapshot snapshot) {
+        handleVerdict(snapshot.getNetworkHandle(), verdictOf(snapshot), snapshot.getIndicatorState());
+    }
+
+    /**
+     * Notifies once when the device goes from protected to unprotected, clears
+     * the notification when protection returns, and schedules another look
+     * after an inconclusive probe.
+     */
+    private void handleVerdict(long networkHandle, @NonNull ProtectionTracker.Verdict verdict,
+            @NonNull IndicatorState state) {
+        ProtectionTracker tracker = new ProtectionTracker(
+                preferences.getBoolean(KEY_WAS_PROTECTED, false),
+                preferences.getLong(KEY_FAILING_NETWORK, ProtectionTracker.NO_NETWORK),
+                preferences.getInt(KEY_CONSECUTIVE_FAILURES, 0));
+        ProtectionTracker.Action action = tracker.onVerdict(networkHandle, verdict);
+        preferences.edit()
+                .putBoolean(KEY_WAS_PROTECTED, tracker.wasProtected())
+                .putLong(KEY_FAILING_NETWORK, tracker.getFailingNetworkHandle())
+                .putInt(KEY_CONSECUTIVE_FAILURES, tracker.getConsecutiveFailures())
+                .apply();
+        switch (action) {
+            case ALERT:
+                notifyProtectionLost(state);
+                break;
+            case CLEAR:
+                NotificationManagerCompat.from(appContext).cancel(NOTIFICATION_ID);
+                break;
+            case RETRY:
+                synchronized (this) {
+                    scheduleEvaluation(RETRY_DELAY_MS);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void notifyProtectionLost(@NonNull IndicatorState state) {
+        NotificationManager notificationManager =
+                (NotificationManager) appContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager == null || !NotificationManagerCompat.from(appContext).areNotificationsEnabled()) {
+            return;
+        }
+        notificationManager.createNotificationChannel(
+                new NotificationChannel(CHANNEL_ID, CHANNEL_NAME, NotificationManager.IMPORTANCE_HIGH));
+        Intent launchIntent = appContext.getPackageManager().getLaunchIntentForPackage(appContext.getPackageName());
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(appContext, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle(appContext.getString(R.string.watchdog_notification_title))
+                .setContentText(appContext.getString(R.string.watchdog_notification_text,
+                        appContext.getString(reasonResId(state))))
+                .setAutoCancel(true)
+                .setPriority(NotificationCompat.PRIORITY_HIGH);
+        if (launchIntent != null) {
+            builder.setContentIntent(PendingIntent.getActivity(appContext, 0, launchIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+        }
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+    }
+
+    /**
+     * Only a probe can confirm protection. A probe that saw another resolver
+     * is what a captive portal or an overriding VPN looks like. Without a
+     * probe, a link whose Private DNS is off or names another provider is
+     * conclusive, but one that names NextDNS is not.
+     */
+    @NonNull
+    static ProtectionTracker.Verdict verdictOf(@NonNull ConnectivitySnapshot snapshot) {
+        ProbeResult result = snapshot.getProbeResult();
+        if (result != null) {
+            return result.getStatus() == ProbeResult.Status.SECURE
+                    ? ProtectionTracker.Verdict.PROTECTED
+                    : ProtectionTracker.Verdict.UNPROTECTED;
+        }
+        return snapshot.getIndicatorState() == IndicatorState.PRIVATE_DNS_NEXTDNS
+                ? ProtectionTracker.Verdict.UNKNOWN
+                : ProtectionTracker.Verdict.UNPROTECTED;
+    }
+
+    private static int reasonResId(@NonNull IndicatorState state) {
+        // Still set to NextDNS, yet unprotected: something on the path intercepts DNS.
+        return state == IndicatorState.PRIVATE_DNS_NEXTDNS
+                ? R.string.watchdog_reason_intercepted
+                : state.getLabelResId();
+    }
+
+    private void finishEvaluation() {
+        synchronized (this) {
+            runWaiters();
+        }
+    }
+
+    // Called with this held.
+    private void runWaiters() {
+        for (Runnable waiter : evaluationWaiters) {
+            try {
+                waiter.run();
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
+            }
+        }
+        evaluationWaiters.clear();
+    }
+
+    // The monitor delivers under its own lock, so it is never called with this held.
+    private void startObserving() {
+        if (observing.compareAndSet(false, true)) {
+            monitor.observe(observer);
+        }
+    }
+
+    private void stopObserving() {
+        synchronized (this) {
+            if (pendingEvaluation != null) {
+                pendingEvaluation.cancel(false);
+                pendingEvaluation = null;
+            }
+            runWaiters();
+        }
+        if (observing.compareAndSet(true, false)) {
+            monitor.unsubscribe(observer);
+        }
+    }
+
+    private PendingIntent wakeUpIntent() {
+        Intent intent = new Intent(appContext, WatchdogReceiver.class);
+        // The system adds the network to the intent, so it has to stay mutable.
+        return PendingIntent.getBroadcast(appContext, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE);
+    }
+
+    private static String encodeGrants(long[] grants) {
+        StringBuilder builder = new StringBuilder();
+        for (long grant : grants) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(grant);
+        }
+        return builder.toString();
+    }
+
+    private static long[] decodeGrants(@Nullable String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = encoded.split(",");
+        long[] grants = new long[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            try {
+                grants[count++] = Long.parseLong(part);
+            } catch (NumberFormatException e) {
+                count--;
+            }
+        }
+        long[] result = new long[count];
+        System.arraycopy(grants, 0, result, 0, count);
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+package com.doubleangels.nextdnsmanagement.watchdog;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+
+/**
+ * Re-registers the network callback {@link ProtectionWatchdog} depends on after
+ * a reboot or an app update, both of which drop it, so the watchdog keeps
+ * running without the user opening the app.
+ */
+public class WatchdogBootReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!Intent.ACTION_BOOT_COMPLETED.equals(action) && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            return;
+        }
+        try {
+            ProtectionWatchdog watchdog = ProtectionWatchdog.getInstance(context);
+            // The plain copy of the preference, so encrypted storage need not be set up here.
+            if (watchdog.isEnabled()) {
+                watchdog.setEnabled(true);
+            }
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.doubleangels.nextdnsmanagement.watchdog;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receives the network callback {@link ProtectionWatchdog} registers with a
+ * PendingIntent, which starts the process when it is not running, and keeps
+ * the broadcast alive until the resulting evaluation has finished.
+ */
+public class WatchdogReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        try {
+            ProtectionWatchdog watchdog = ProtectionWatchdog.getInstance(context);
+            if (!watchdog.isEnabled()) {
+                return;
+            }
+            PendingResult pendingResult = goAsync();
+            AtomicBoolean finished = new AtomicBoolean();
+            watchdog.requestEvaluation(() -> {
+                if (finished.compareAndSet(false, true)) {
+                    pendingResult.finish();
+                }
+            });
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.doubleangels.nextdnsmanagement.webview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.view.PixelCopy;
+import android.view.View;
+import android.view.Window;
+import android.webkit.WebView;
+import android.widget.ImageView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.security.crypto.EncryptedFile;
+import androidx.security.crypto.MasterKey;
+
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Last rendered dashboard, shown on a cold start until the live page has
+ * finished loading, so the user sees content instead of a blank WebView. The
+ * WebView is copied from the window surface with {@link PixelCopy} at a
+ * reduced size; compressing, encrypting with {@link EncryptedFile}, writing and
+ * reading all happen on a background thread. Callers must neither capture nor
+ * reveal while app lock is enabled, since the image would show the dashboard
+ * before the user unlocks.
+ */
+public final class DashboardSnapshot {
+
+    static final float SCALE = 0.5f;
+    // Older renders are more likely to mislead than to help.
+    static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final int QUALITY = 80;
+    private static final long CROSS_FADE_MS = 250L;
+    // A snapshot taken in another orientation or window size is not shown.
+    private static final float MAX_ASPECT_DIFFERENCE = 0.02f;
+    private static final String FILE_NAME = "dashboard_snapshot";
+
+    private static Handler worker;
+
+    private final Context appContext;
+    private final ImageView snapshotView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Main thread only.
+    private Bitmap loadedBitmap;
+    private boolean revealRequested;
+    private boolean dismissed;
+
+    public DashboardSnapshot(@NonNull Context context, @Nullable ImageView snapshotView) {
+        this.appContext = context.getApplicationContext();
+        this.snapshotView = snapshotView;
+    }
+
+    /**
+     * Starts decrypting the stored snapshot in the background. Nothing is shown
+     * until {@link #reveal()}.
+     */
+    @MainThread
+    public void load() {
+        worker().post(() -> {
+            Bitmap bitmap = read();
+            if (bitmap != null) {
+                mainHandler.post(() -> onLoaded(bitmap));
+            }
+        });
+    }
+
+    /**
+     * Shows the snapshot as soon as it is loaded, unless the live page has
+     * already replaced it.
+     */
+    @MainThread
+    public void reveal() {
+        revealRequested = true;
+        if (loadedBitmap != null) {
+            show();
+        }
+    }
+
+    /**
+     * Cross-fades to the live page underneath. Later loads are not shown.
+     */
+    @MainThread
+    public void dismiss() {
+        dismissed = true;
+        loadedBitmap = null;
+        if (snapshotView == null || snapshotView.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        ImageView view = snapshotView;
+        view.animate().cancel();
+        view.animate()
+                .alpha(0.0f)
+                .setDuration(CROSS_FADE_MS)
+                .withEndAction(() -> {
+                    view.setVisibility(View.GONE);
+                    view.setImageDrawable(null);
+                })
+                .start();
+    }
+
+    /**
+     * Hides the snapshot at once and deletes the stored one, e.g. because app
+     * lock is enabled.
+     */
+    @MainThread
+    public void discard() {
+        dismissed = true;
+        loadedBitmap = null;
+        if (snapshotView != null) {
+            snapshotView.animate().cancel();
+            snapshotView.setVisibility(View.GONE);
+            snapshotView.setImageDrawable(null);
+        }
+        delete(appContext);
+    }
+
+    /**
+     * Copies what the WebView currently shows and stores it for the next cold
+     * start. Only the copy request is made here; PixelCopy delivers to the
+     * background thread, which compresses, encrypts and writes.
+     */
+    @MainThread
+    public void capture(@NonNull Window window, @NonNull WebView webView) {
+        int width = webView.getWidth();
+        int height = webView.getHeight();
+        if (width == 0 || height == 0 || !webView.isAttachedToWindow()) {
+            return;
+        }
+        int[] location = new int[2];
+        webView.getLocationInWindow(location);
+        Rect source = new Rect(location[0], location[1], location[0] + width, location[1] + height);
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, Math.round(width * SCALE)),
+                Math.max(1, Math.round(height * SCALE)), Bitmap.Config.ARGB_8888);
+        try {
+            PixelCopy.request(window, source, bitmap, result -> {
+                if (result == PixelCopy.SUCCESS) {
+                    write(bitmap);
+                }
+                bitmap.recycle();
+            }, worker());
+        } catch (IllegalArgumentException e) {
+            // The window has no surface any more; there is nothing to copy.
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Deletes the stored snapshot in the background.
+     */
+    public static void delete(@NonNull Context context) {
+        File file = snapshotFile(context.getApplicationContext());
+        worker().post(() -> {
+            if (file.exists() && !file.delete()) {
+                SentryManager.captureStaticException(new IllegalStateException("Could not delete dashboard snapshot."));
+            }
+        });
+    }
+
+    @MainThread
+    private void onLoaded(@NonNull Bitmap bitmap) {
+        if (dismissed) {
+            return;
+        }
+        loadedBitmap = bitmap;
+        if (revealRequested) {
+            show();
+        }
+    }
+
+    @MainThread
+    private void show() {
+        Bitmap bitmap = loadedBitmap;
+        if (snapshotView == null || bitmap == null || dismissed) {
+            return;
+        }
+        int contentWidth = snapshotView.getWidth() - snapshotView.getPaddingLeft() - snapshotView.getPaddingRight();
+        int contentHeight = snapshotView.getHeight() - snapshotView.getPaddingTop() - snapshotView.getPaddingBottom();
+        if (contentWidth > 0 && contentHeight > 0) {
+            float viewAspect = (float) contentWidth / contentHeight;
+            float bitmapAspect = (float) bitmap.getWidth() / bitmap.getHeight();
+            if (Math.abs(viewAspect - bitmapAspect) / viewAspect > MAX_ASPECT_DIFFERENCE) {
+                loadedBitmap = null;
+                return;
+            }
+        }
+        snapshotView.animate().cancel();
+        snapshotView.setImageBitmap(bitmap);
+        snapshotView.setAlpha(1.0f);
+        snapshotView.setVisibility(View.VISIBLE);
+    }
+
+    @WorkerThread
+    private void write(@NonNull Bitmap bitmap) {
+        File file = snapshotFile(appContext);
+        // EncryptedFile refuses to overwrite, and binds the file name into the
+        // ciphertext, so the old file is deleted rather than replaced by a rename.
+        if (file.exists() && !file.delete()) {
+            return;
+        }
+        try (OutputStream output = encryptedFile(file).openFileOutput()) {
+            bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, QUALITY, output);
+        } catch (Exception e) {
+            file.delete();
+            SentryManager.captureStaticException(e);
+        }
+    }
+
+    @Nullable
+    @WorkerThread
+    private Bitmap read() {
+        File file = snapshotFile(appContext);
+        if (!file.exists()) {
+            return null;
+        }
+        if (System.currentTimeMillis() - file.lastModified() > MAX_AGE_MS) {
+            file.delete();
+            return null;
+        }
+        try (InputStream input = encryptedFile(file).openFileInput()) {
+            return BitmapFactory.decodeStream(input);
+        } catch (Exception e) {
+            // A write cut short by process death leaves an undecryptable file.
+            file.delete();
+            return null;
+        }
+    }
+
+    @NonNull
+    private EncryptedFile encryptedFile(@NonNull File file) throws Exception {
+        MasterKey masterKey = new MasterKey.Builder(appContext)
+                .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                .build();
+        return new EncryptedFile.Builder(appContext, file, masterKey,
+                EncryptedFile.FileEncryptionScheme.AES256_GCM_HKDF_4KB).build();
+    }
+
+    @NonNull
+    private static File snapshotFile(@NonNull Context context) {
+        // Excluded from backups: the key never leaves this device anyway.
+        return new File(context.getNoBackupFilesDir(), FILE_NAME);
+    }
+
+    @NonNull
+    private static synchronized Handler worker() {
+        if (worker == null) {
+            HandlerThread thread = new HandlerThread("dashboard-snapshot");
+            thread.start();
+            worker = new Handler(thread.getLooper());
+        }
+        return worker;
+    }
+}
@@ -0,0 +1,134 @@
+package com.doubleangels.nextdnsmanagement.webview;
+
+import android.content.Context;
+import android.net.Uri;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+import com.doubleangels.nextdnsmanagement.utils.ExternalLinkHandler;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Serves the dashboard's fingerprinted static assets from
+ * {@link HttpClients#getWebAssetClient(Context)} instead of the WebView's own
+ * network stack. A fingerprinted file name changes whenever its content does,
+ * so the URL-keyed disk cache behind that client is effectively content
+ * addressed and survives the WebView's cache being cleared. Stale entries are
+ * revalidated by OkHttp, and bodies are streamed to the WebView as they arrive.
+ * Anything else, or any failure, returns null so the WebView loads the request
+ * itself.
+ */
+public final class StaticAssetInterceptor {
+
+    // A name segment of at least eight characters with a digit, right before the
+    // extension, e.g. main.3f2a9b1c.js, 787.2b3c4d5e.chunk.js or index-B3xK9aQz.css.
+    private static final Pattern FINGERPRINTED_ASSET = Pattern.compile(
+            "[.\\-_~](?=[A-Za-z_]*[0-9])[A-Za-z0-9_]{8,}(?:\\.chunk)?"
+                    + "\\.(?:js|mjs|css|woff2?|ttf|otf|svg|png|jpe?g|gif|webp|ico)$");
+    // OkHttp negotiates compression and validators itself; forwarding the
+    // WebView's would hand back encoded bodies or bare 304s.
+    private static final String[] DROPPED_REQUEST_HEADERS = {
+            "accept-encoding", "if-none-match", "if-modified-since", "range"
+    };
+    private static final String[] DROPPED_RESPONSE_HEADERS = {
+            "content-encoding", "content-length", "transfer-encoding", "connection", "set-cookie"
+    };
+
+    private final OkHttpClient httpClient;
+
+    public StaticAssetInterceptor(@NonNull Context context) {
+        this(HttpClients.getWebAssetClient(context));
+    }
+
+    StaticAssetInterceptor(@NonNull OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Called from {@code WebViewClient.shouldInterceptRequest}, which runs on a
+     * WebView worker thread.
+     *
+     * @return The asset's response, or null to let the WebView load it.
+     */
+    @Nullable
+    @WorkerThread
+    public WebResourceResponse intercept(@NonNull WebResourceRequest request) {
+        if (!isFingerprintedAsset(request)) {
+            return null;
+        }
+        Request.Builder builder = new Request.Builder().url(request.getUrl().toString());
+        for (Map.Entry<String, String> header : request.getRequestHeaders().entrySet()) {
+            if (!contains(DROPPED_REQUEST_HEADERS, header.getKey())) {
+                builder.header(header.getKey(), header.getValue());
+            }
+        }
+        Response response = null;
+        try {
+            response = httpClient.newCall(builder.build()).execute();
+            ResponseBody body = response.body();
+            if (response.code() != 200 || body == null) {
+                response.close();
+                return null;
+            }
+            MediaType contentType = body.contentType();
+            Charset charset = contentType != null ? contentType.charset() : null;
+            Map<String, String> headers = new HashMap<>();
+            for (String name : response.headers().names()) {
+                if (!contains(DROPPED_RESPONSE_HEADERS, name)) {
+                    headers.put(name, String.join(", ", response.headers(name)));
+                }
+            }
+            String reason = response.message().isEmpty() ? "OK" : response.message();
+            // The WebView closes the stream once it has read it, which releases the response.
+            return new WebResourceResponse(
+                    contentType != null ? contentType.type() + "/" + contentType.subtype() : null,
+                    charset != null ? charset.name() : null,
+                    response.code(), reason, headers, body.byteStream());
+        } catch (IOException | RuntimeException e) {
+            if (response != null) {
+                response.close();
+            }
+            return null;
+        }
+    }
+
+    private static boolean isFingerprintedAsset(@NonNull WebResourceRequest request) {
+        if (request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod())) {
+            return false;
+        }
+        Uri url = request.getUrl();
+        if (!"https".equalsIgnoreCase(url.getScheme()) || !ExternalLinkHandler.isNextDnsHost(url)
+                || url.getQuery() != null) {
+            return false;
+        }
+        String name = url.getLastPathSegment();
+        return name != null && FINGERPRINTED_ASSET.matcher(name).find();
+    }
+
+    private static boolean contains(String[] lowerCaseNames, String name) {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        for (String candidate : lowerCaseNames) {
+            if (candidate.equals(lowerCaseName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
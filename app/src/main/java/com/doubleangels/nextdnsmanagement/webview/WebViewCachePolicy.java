@@ -0,0 +1,131 @@
+package com.doubleangels.nextdnsmanagement.webview;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.webkit.WebView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.doubleangels.nextdnsmanagement.network.HttpClients;
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+import com.doubleangels.nextdnsmanagement.sharedpreferences.SharedPreferencesManager;
+
+import java.io.File;
+
+/**
+ * Decides what a WebView leaves behind when it is torn down. Leaving the app
+ * no longer throws the HTTP cache away, so the next launch starts warm;
+ * users with app lock enabled still get everything wiped, since they asked
+ * for the dashboard to stay private between unlocks.
+ */
+public final class WebViewCachePolicy {
+
+    public enum Retention {
+        /** Leave the caches alone, e.g. when recovering from a renderer crash. */
+        KEEP,
+        /** Keep the caches, but clear the WebView's once it grows past {@link #MAX_WEBVIEW_CACHE_BYTES}. */
+        SIZE_CAPPED,
+        /** Clear the WebView's cache, history and form data, the app's asset cache and the dashboard snapshot. */
+        WIPE_ON_LOCK
+    }
+
+    // Chromium evicts its HTTP cache by itself, but code and GPU caches in the
+    // same directory are not bounded by that.
+    static final long MAX_WEBVIEW_CACHE_BYTES = 64L * 1024 * 1024;
+    // Where the WebView provider keeps its caches under the app's cache directory.
+    private static final String[] WEBVIEW_CACHE_DIRECTORIES = { "WebView", "org.chromium.android_webview" };
+
+    private static final String PREF_NAME = "webview_cache_policy";
+    private static final String KEY_TRIM_PENDING = "trim_pending";
+
+    private final Context appContext;
+    private final SharedPreferences preferences;
+
+    public WebViewCachePolicy(@NonNull Context context) {
+        this.appContext = context.getApplicationContext();
+        // Plain preferences: the flag is not sensitive and is read before a WebView loads.
+        this.preferences = appContext.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return {@link Retention#WIPE_ON_LOCK} when app lock is enabled, or when
+     *         preferences are not ready to tell, and
+     *         {@link Retention#SIZE_CAPPED} otherwise.
+     */
+    @NonNull
+    public Retention getRetention() {
+        if (!SharedPreferencesManager.isInitialized()
+                || SharedPreferencesManager.getBoolean("app_lock_enable", false)) {
+            return Retention.WIPE_ON_LOCK;
+        }
+        return Retention.SIZE_CAPPED;
+    }
+
+    /**
+     * Applies a trim that an earlier teardown found necessary. Call before the
+     * WebView loads its first page, so the clear cannot discard resources the
+     * current page is using.
+     */
+    @MainThread
+    public void onWebViewCreated(@NonNull WebView webView) {
+        if (preferences.getBoolean(KEY_TRIM_PENDING, false)) {
+            preferences.edit().remove(KEY_TRIM_PENDING).apply();
+            webView.clearCache(true);
+        }
+    }
+
+    /**
+     * Applies the retention to a WebView that is about to be destroyed.
+     */
+    @MainThread
+    public void onWebViewDestroying(@NonNull WebView webView, @NonNull Retention retention) {
+        switch (retention) {
+            case WIPE_ON_LOCK:
+                webView.clearCache(true);
+                webView.clearHistory();
+                webView.clearFormData();
+                new Thread(() -> HttpClients.clearWebAssetCache(appContext), "webview-cache-wipe").start();
+                DashboardSnapshot.delete(appContext);
+                break;
+            case SIZE_CAPPED:
+                // Measuring walks the cache directories, which is too slow for onDestroy.
+                new Thread(this::checkSize, "webview-cache-size").start();
+                break;
+            case KEEP:
+            default:
+                break;
+        }
+    }
+
+    @WorkerThread
+    private void checkSize() {
+        try {
+            long bytes = 0L;
+            for (String directory : WEBVIEW_CACHE_DIRECTORIES) {
+                bytes += sizeOf(new File(appContext.getCacheDir(), directory));
+            }
+            if (bytes > MAX_WEBVIEW_CACHE_BYTES) {
+                preferences.edit().putBoolean(KEY_TRIM_PENDING, true).apply();
+            }
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        File[] children = file.listFiles();
+        if (children == null) {
+            return 0L;
+        }
+        long bytes = 0L;
+        for (File child : children) {
+            bytes += sizeOf(child);
+        }
+        return bytes;
+    }
+}
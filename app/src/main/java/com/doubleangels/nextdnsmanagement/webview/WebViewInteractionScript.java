@@ -1,16 +1,37 @@
 package com.doubleangels.nextdnsmanagement.webview;
 
+import android.webkit.WebView;
+
+import androidx.annotation.NonNull;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.util.Set;
+
 /**
- * JavaScript injected after each page load to coordinate swipe-refresh with
- * in-page horizontal tab scrolling and modal dialogs.
+ * JavaScript injected into NextDNS pages to coordinate swipe-refresh with
+ * in-page horizontal tab scrolling and modal dialogs. The document is scanned
+ * once when it is parsed; after that only nodes the page adds are inspected,
+ * batched to one pass per animation frame.
  */
 public final class WebViewInteractionScript {
 
+    // The dashboard and its subdomains; no other site gets the script.
+    private static final Set<String> ALLOWED_ORIGIN_RULES = Set.of("https://nextdns.io", "https://*.nextdns.io");
+
     private WebViewInteractionScript() {
     }
 
-    public static final String PAGE_FINISHED_SCRIPT =
+    public static final String INTERACTION_SCRIPT =
             "(function() {" +
+            "   if (window.top !== window || window.__ndmsInteractionGuards) return;" +
+            "   window.__ndmsInteractionGuards = true;" +
+            "   var SWIPE_GUARD_SELECTOR = '.modal-dialog.modal-lg.modal-dialog-scrollable, " +
+            "nav[role=\"tablist\"], .nav-tabs, .nav';" +
+            "   var MENU_SELECTOR = '.account-menu, .equipment-menu';" +
+            "   var NAV_ITEM_SELECTOR = '.nav-item';" +
+            "   var pendingNodes = [];" +
+            "   var frameRequested = false;" +
             "   function disableSwipeRefresh() {" +
             "       if (typeof AndroidInterface !== 'undefined') {" +
             "           AndroidInterface.setSwipeRefreshEnabled(false);" +
@@ -22,32 +43,54 @@ public final class WebViewInteractionScript {
             "       }" +
             "   }" +
             "   function attachSwipeRefreshGuard(element) {" +
-            "       if (!element || element.getAttribute('data-swipe-refresh-guard')) return;" +
+            "       if (element.getAttribute('data-swipe-refresh-guard')) return;" +
             "       element.setAttribute('data-swipe-refresh-guard', 'true');" +
             "       element.addEventListener('touchstart', disableSwipeRefresh, {passive: true});" +
             "       element.addEventListener('touchend', enableSwipeRefresh, {passive: true});" +
             "       element.addEventListener('touchcancel', enableSwipeRefresh, {passive: true});" +
             "   }" +
-            "   function setupInteractionGuards() {" +
-            "       document.querySelectorAll('.modal-dialog.modal-lg.modal-dialog-scrollable')" +
-            "           .forEach(attachSwipeRefreshGuard);" +
-            "       document.querySelectorAll('nav[role=\"tablist\"], .nav-tabs, .nav')" +
-            "           .forEach(attachSwipeRefreshGuard);" +
-            "       var accountMenu = document.querySelector('.account-menu, .equipment-menu');" +
-            "       if (accountMenu) {" +
-            "           accountMenu.style.position = 'relative';" +
-            "           accountMenu.style.zIndex = '1000';" +
+            "   function raiseMenu(element) {" +
+            "       element.style.position = 'relative';" +
+            "       element.style.zIndex = '1000';" +
+            "   }" +
+            "   function keepNavItemWidth(navItem) {" +
+            "       if (!navItem.getAttribute('data-nav-flex')) {" +
+            "           navItem.setAttribute('data-nav-flex', 'true');" +
+            "           navItem.style.flexShrink = '0';" +
             "       }" +
-            "       document.querySelectorAll('.nav-item').forEach(function(navItem) {" +
-            "           if (!navItem.getAttribute('data-nav-flex')) {" +
-            "               navItem.setAttribute('data-nav-flex', 'true');" +
-            "               navItem.style.flexShrink = '0';" +
+            "   }" +
+            "   function forEachMatch(root, selector, action) {" +
+            "       if (root.matches && root.matches(selector)) action(root);" +
+            "       root.querySelectorAll(selector).forEach(action);" +
+            "   }" +
+            "   function setupInteractionGuards(root) {" +
+            "       forEachMatch(root, SWIPE_GUARD_SELECTOR, attachSwipeRefreshGuard);" +
+            "       forEachMatch(root, MENU_SELECTOR, raiseMenu);" +
+            "       forEachMatch(root, NAV_ITEM_SELECTOR, keepNavItemWidth);" +
+            "   }" +
+            "   function flushPendingNodes() {" +
+            "       frameRequested = false;" +
+            "       var nodes = pendingNodes;" +
+            "       pendingNodes = [];" +
+            "       for (var i = 0; i < nodes.length; i++) {" +
+            "           if (nodes[i].isConnected) setupInteractionGuards(nodes[i]);" +
+            "       }" +
+            "   }" +
+            "   function onMutations(mutations) {" +
+            "       for (var i = 0; i < mutations.length; i++) {" +
+            "           var added = mutations[i].addedNodes;" +
+            "           for (var j = 0; j < added.length; j++) {" +
+            "               if (added[j].nodeType === Node.ELEMENT_NODE) pendingNodes.push(added[j]);" +
             "           }" +
-            "       });" +
+            "       }" +
+            "       if (pendingNodes.length > 0 && !frameRequested) {" +
+            "           frameRequested = true;" +
+            "           requestAnimationFrame(flushPendingNodes);" +
+            "       }" +
             "   }" +
-            "   setupInteractionGuards();" +
-            "   if (!window.__ndmsInteractionObserver) {" +
-            "       window.__ndmsInteractionObserver = new MutationObserver(setupInteractionGuards);" +
+            "   function start() {" +
+            "       setupInteractionGuards(document);" +
+            "       window.__ndmsInteractionObserver = new MutationObserver(onMutations);" +
             "       window.__ndmsInteractionObserver.observe(document.body, {childList: true, subtree: true});" +
             "   }" +
             "   window.__ndmsDisconnectInteractionObserver = function() {" +
@@ -55,9 +98,31 @@ public final class WebViewInteractionScript {
             "           window.__ndmsInteractionObserver.disconnect();" +
             "           window.__ndmsInteractionObserver = null;" +
             "       }" +
+            "       pendingNodes = [];" +
             "   };" +
+            "   if (document.readyState === 'loading') {" +
+            "       document.addEventListener('DOMContentLoaded', start, {once: true});" +
+            "   } else {" +
+            "       start();" +
+            "   }" +
             "})();";
 
     public static final String DISCONNECT_SCRIPT =
             "(function(){if(window.__ndmsDisconnectInteractionObserver)window.__ndmsDisconnectInteractionObserver();})();";
+
+    /**
+     * Registers {@link #INTERACTION_SCRIPT} to run at document start in every
+     * NextDNS page the WebView loads from now on. Call before the first
+     * NextDNS page is loaded.
+     *
+     * @return false if this WebView cannot run document-start scripts; the
+     *         caller then evaluates the script when each page finishes.
+     */
+    public static boolean installAtDocumentStart(@NonNull WebView webView) {
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+            return false;
+        }
+        WebViewCompat.addDocumentStartJavaScript(webView, INTERACTION_SCRIPT, ALLOWED_ORIGIN_RULES);
+        return true;
+    }
 }
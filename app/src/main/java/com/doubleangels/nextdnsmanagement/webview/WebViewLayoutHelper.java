@@ -3,13 +3,15 @@ package com.doubleangels.nextdnsmanagement.webview;
 import android.view.ViewGroup;
 import android.webkit.WebView;
 
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.doubleangels.nextdnsmanagement.R;
 
 /**
- * Ensures the main WebView exists in the activity layout after render-process recovery.
+ * Ensures the main WebView exists in the activity layout after render-process recovery,
+ * and warms it up during startup.
  */
 public final class WebViewLayoutHelper {
 
@@ -41,4 +43,19 @@ public final class WebViewLayoutHelper {
                 ViewGroup.LayoutParams.MATCH_PARENT));
         return webView;
     }
+
+    /**
+     * Loads a blank page so the renderer process spawns while the activity is still
+     * waiting for preferences, instead of when the real page is first requested.
+     *
+     * @return Whether the warm-up page was loaded, in which case it is in the history
+     *         until the caller clears it.
+     */
+    public static boolean startRenderer(@Nullable WebView webView) {
+        if (webView == null) {
+            return false;
+        }
+        webView.loadUrl("about:blank");
+        return true;
+    }
 }
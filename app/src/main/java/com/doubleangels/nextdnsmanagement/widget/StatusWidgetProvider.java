@@ -0,0 +1,185 @@
+package com.doubleangels.nextdnsmanagement.widget;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.text.format.DateFormat;
+import android.widget.RemoteViews;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.doubleangels.nextdnsmanagement.R;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivityMonitor;
+import com.doubleangels.nextdnsmanagement.protocol.ConnectivitySnapshot;
+import com.doubleangels.nextdnsmanagement.protocol.IndicatorState;
+import com.doubleangels.nextdnsmanagement.sentry.SentryManager;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Home-screen widget showing the same protection states as the status icon in
+ * the app. It paints the last known state straight away and then, within
+ * {@link StatusWidgetStore}'s refresh budget, verifies it headlessly through
+ * {@link ConnectivityMonitor#verify}, without starting an activity, initializing
+ * encrypted preferences or loading the WebView. While the process runs it also
+ * follows {@link ConnectivityMonitor} snapshots, so a network change shows up
+ * without waiting for the next periodic update. Tapping the widget asks for a
+ * refresh.
+ */
+public class StatusWidgetProvider extends AppWidgetProvider {
+
+    static final String ACTION_REFRESH = "com.doubleangels.nextdnsmanagement.widget.action.REFRESH";
+
+    // Broadcast receivers are stopped after about ten seconds of goAsync().
+    private static final long VERIFY_TIMEOUT_MS = 8_000L;
+
+    private static final AtomicBoolean observing = new AtomicBoolean();
+    // The newest observed snapshot the worker has not rendered yet.
+    private static final AtomicReference<ConnectivitySnapshot> pendingSnapshot = new AtomicReference<>();
+    private static Handler worker;
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        try {
+            StatusWidgetStore store = new StatusWidgetStore(context);
+            render(context, appWidgetManager, appWidgetIds, store.getState(), store.getCheckedAtMs());
+            refresh(context, false);
+        } catch (Exception e) {
+            SentryManager.captureStaticException(e);
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        super.onReceive(context, intent);
+        if (ACTION_REFRESH.equals(intent.getAction())) {
+            try {
+                refresh(context, true);
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
+            }
+        }
+    }
+
+    /**
+     * Repaints every widget instance from a snapshot, e.g. one the app already
+     * has, and remembers it for the next periodic update.
+     */
+    public static void updateAll(@NonNull Context context, @NonNull ConnectivitySnapshot snapshot) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, StatusWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        long checkedAtMs = snapshot.getProbeResult() != null
+                ? snapshot.getProbeResult().getTimestampMs()
+                : System.currentTimeMillis();
+        IndicatorState state = snapshot.getIndicatorState();
+        new StatusWidgetStore(context).saveState(state, checkedAtMs);
+        render(context, appWidgetManager, appWidgetIds, state, checkedAtMs);
+    }
+
+    /**
+     * Repaints the widgets whenever a snapshot from the monitor changes the
+     * state they show. Observing never causes a probe. Safe to call more than
+     * once.
+     */
+    public static void observe(@NonNull Context context) {
+        if (!observing.compareAndSet(false, true)) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        StatusWidgetStore store = new StatusWidgetStore(appContext);
+        ConnectivityMonitor.getInstance(appContext).observe(snapshot -> {
+            // Delivered while the monitor publishes; the preference read and the
+            // widget update happen on the worker, and only the newest snapshot
+            // of a burst is rendered.
+            if (pendingSnapshot.getAndSet(snapshot) != null) {
+                return;
+            }
+            worker().post(() -> {
+                ConnectivitySnapshot latest = pendingSnapshot.getAndSet(null);
+                try {
+                    if (latest != null && !latest.getIndicatorState().equals(store.getState())) {
+                        updateAll(appContext, latest);
+                    }
+                } catch (Exception e) {
+                    SentryManager.captureStaticException(e);
+                }
+            });
+        });
+    }
+
+    private void refresh(Context context, boolean userRequested) {
+        Context appContext = context.getApplicationContext();
+        ConnectivityMonitor monitor = ConnectivityMonitor.getInstance(appContext);
+        ConnectivitySnapshot known = monitor.getSnapshot();
+        if (known != null && known.isVerified()) {
+            updateAll(appContext, known);
+        }
+        if (!new StatusWidgetStore(appContext).tryAcquireRefresh(userRequested)) {
+            return;
+        }
+
+        PendingResult pendingResult = goAsync();
+        AtomicBoolean finished = new AtomicBoolean();
+        Handler handler = new Handler(Looper.getMainLooper());
+        Runnable timeout = () -> {
+            if (finished.compareAndSet(false, true)) {
+                pendingResult.finish();
+            }
+        };
+        handler.postDelayed(timeout, VERIFY_TIMEOUT_MS);
+        monitor.verify(snapshot -> {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            handler.removeCallbacks(timeout);
+            try {
+                updateAll(appContext, snapshot);
+            } catch (Exception e) {
+                SentryManager.captureStaticException(e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    @NonNull
+    private static synchronized Handler worker() {
+        if (worker == null) {
+            HandlerThread thread = new HandlerThread("status-widget");
+            thread.start();
+            worker = new Handler(thread.getLooper());
+        }
+        return worker;
+    }
+
+    private static void render(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds,
+            @Nullable IndicatorState state, long checkedAtMs) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_status);
+        if (state != null) {
+            views.setImageViewResource(R.id.widgetStatusIcon, state.getDrawableResId());
+            views.setInt(R.id.widgetStatusIcon, "setColorFilter",
+                    ContextCompat.getColor(context, state.getColorResId()));
+            views.setTextViewText(R.id.widgetStatusLabel, context.getString(state.getLabelResId()));
+            views.setTextViewText(R.id.widgetStatusCheckedAt, context.getString(R.string.widget_checked_at,
+                    DateFormat.getTimeFormat(context).format(new Date(checkedAtMs))));
+        }
+        Intent refreshIntent = new Intent(context, StatusWidgetProvider.class).setAction(ACTION_REFRESH);
+        views.setOnClickPendingIntent(R.id.widgetRoot, PendingIntent.getBroadcast(context, 0, refreshIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+        appWidgetManager.updateAppWidget(appWidgetIds, views);
+    }
+}
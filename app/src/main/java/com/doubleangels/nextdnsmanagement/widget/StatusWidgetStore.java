@@ -0,0 +1,73 @@
+package com.doubleangels.nextdnsmanagement.widget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.doubleangels.nextdnsmanagement.protocol.IndicatorState;
+
+/**
+ * Last status shown by the home-screen widget and the budget for refreshing
+ * it headlessly, which the Quick Settings tile shares. Kept in plain
+ * SharedPreferences rather than
+ * {@link com.doubleangels.nextdnsmanagement.sharedpreferences.SharedPreferencesManager}:
+ * it holds nothing sensitive, and neither surface may pay for setting up
+ * encrypted storage.
+ */
+public final class StatusWidgetStore {
+
+    // Periodic updates may probe at most this often.
+    static final long SCHEDULED_REFRESH_INTERVAL_MS = 15 * 60 * 1000L;
+    // Taps refresh sooner, but repeated taps still share one probe.
+    static final long USER_REFRESH_INTERVAL_MS = 30 * 1000L;
+
+    private static final String PREF_NAME = "status_widget";
+    private static final String KEY_STATE = "state";
+    private static final String KEY_CHECKED_AT = "checked_at";
+    private static final String KEY_LAST_REFRESH = "last_refresh";
+
+    private final SharedPreferences preferences;
+
+    public StatusWidgetStore(@NonNull Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return The last saved state, or null when none has been saved yet.
+     */
+    @Nullable
+    public IndicatorState getState() {
+        return IndicatorState.fromKey(preferences.getString(KEY_STATE, null));
+    }
+
+    public long getCheckedAtMs() {
+        return preferences.getLong(KEY_CHECKED_AT, 0L);
+    }
+
+    public void saveState(@NonNull IndicatorState state, long checkedAtMs) {
+        preferences.edit()
+                .putString(KEY_STATE, state.getKey())
+                .putLong(KEY_CHECKED_AT, checkedAtMs)
+                .apply();
+    }
+
+    /**
+     * Claims the right to start a headless probe now if the previous one is
+     * older than the interval for this kind of refresh.
+     *
+     * @return Whether the caller may probe.
+     */
+    public synchronized boolean tryAcquireRefresh(boolean userRequested) {
+        long now = System.currentTimeMillis();
+        long last = preferences.getLong(KEY_LAST_REFRESH, 0L);
+        long interval = userRequested ? USER_REFRESH_INTERVAL_MS : SCHEDULED_REFRESH_INTERVAL_MS;
+        // A clock moved backwards must not block refreshes until it catches up.
+        if (last > now || now - last >= interval) {
+            preferences.edit().putLong(KEY_LAST_REFRESH, now).apply();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package com.doubleangels.nextdnsmanagement.watchdog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates the network churn the watchdog sees and checks that it neither
+ * probes beyond its hourly budget nor posts a notification for every flap.
+ */
+public class ProtectionWatchdogChurnTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final long NETWORK_A = 100L;
+    private static final long NETWORK_B = 200L;
+
+    private long now = 1_000_000L;
+
+    @Test
+    public void churnNeverExceedsProbeBudget() {
+        ProbeBudget budget = newBudget(new long[0]);
+        List<Long> grants = new ArrayList<>();
+        // A network event every five seconds for three hours.
+        for (int event = 0; event < 3 * 720; event++) {
+            if (budget.tryAcquire()) {
+                grants.add(now);
+            }
+            now += 5_000L;
+        }
+        assertProbesPerHourAtMost(grants, ProtectionWatchdog.MAX_PROBES_PER_HOUR);
+        assertEquals(3 * ProtectionWatchdog.MAX_PROBES_PER_HOUR, grants.size());
+    }
+
+    @Test
+    public void budgetHoldsAcrossProcessRestarts() {
+        ProbeBudget budget = newBudget(new long[0]);
+        List<Long> grants = new ArrayList<>();
+        for (int event = 0; event < 720; event++) {
+            if (budget.tryAcquire()) {
+                grants.add(now);
+            }
+            // The receiver's process is killed and restored every minute.
+            if (event % 12 == 11) {
+                budget = newBudget(budget.toArray());
+            }
+            now += 5_000L;
+        }
+        assertProbesPerHourAtMost(grants, ProtectionWatchdog.MAX_PROBES_PER_HOUR);
+    }
+
+    @Test
+    public void flappingProbesNeverAlert() {
+        ProbeBudget budget = newBudget(new long[0]);
+        ProtectionTracker tracker = new ProtectionTracker(true, ProtectionTracker.NO_NETWORK, 0);
+        int probes = 0;
+        int alerts = 0;
+        for (int event = 0; event < 3 * 720; event++) {
+            if (budget.tryAcquire()) {
+                // Timeouts between answers from NextDNS, as on a network that keeps dropping.
+                ProtectionTracker.Verdict verdict = ++probes % ProtectionTracker.FAILURES_BEFORE_ALERT == 0
+                        ? ProtectionTracker.Verdict.PROTECTED
+                        : ProtectionTracker.Verdict.UNKNOWN;
+                if (tracker.onVerdict(NETWORK_A, verdict) == ProtectionTracker.Action.ALERT) {
+                    alerts++;
+                }
+            }
+            now += 5_000L;
+        }
+        assertEquals(0, alerts);
+        assertTrue(tracker.wasProtected());
+    }
+
+    @Test
+    public void transientFailuresRetryInsteadOfAlerting() {
+        ProtectionTracker tracker = new ProtectionTracker(true, ProtectionTracker.NO_NETWORK, 0);
+        assertEquals(ProtectionTracker.Action.RETRY, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNKNOWN));
+        assertEquals(ProtectionTracker.Action.NONE, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.PROTECTED));
+        assertEquals(ProtectionTracker.Action.RETRY, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNKNOWN));
+        assertEquals(ProtectionTracker.Action.RETRY, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNKNOWN));
+        assertTrue(tracker.wasProtected());
+    }
+
+    @Test
+    public void failuresOnDifferentNetworksDoNotAccumulate() {
+        ProtectionTracker tracker = new ProtectionTracker(true, ProtectionTracker.NO_NETWORK, 0);
+        for (int i = 0; i < 10; i++) {
+            long network = i % 2 == 0 ? NETWORK_A : NETWORK_B;
+            assertEquals(ProtectionTracker.Action.RETRY, tracker.onVerdict(network, ProtectionTracker.Verdict.UNKNOWN));
+        }
+    }
+
+    @Test
+    public void repeatedFailuresOnOneNetworkAlertOnce() {
+        ProtectionTracker tracker = new ProtectionTracker(true, ProtectionTracker.NO_NETWORK, 0);
+        for (int i = 1; i < ProtectionTracker.FAILURES_BEFORE_ALERT; i++) {
+            assertEquals(ProtectionTracker.Action.RETRY, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNKNOWN));
+        }
+        assertEquals(ProtectionTracker.Action.ALERT, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNKNOWN));
+        assertEquals(ProtectionTracker.Action.NONE, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNKNOWN));
+        assertEquals(ProtectionTracker.Action.CLEAR, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.PROTECTED));
+    }
+
+    @Test
+    public void conclusiveLossAlertsAtOnceAndClearsOnReturn() {
+        ProtectionTracker tracker = new ProtectionTracker(true, ProtectionTracker.NO_NETWORK, 0);
+        assertEquals(ProtectionTracker.Action.ALERT, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNPROTECTED));
+        assertEquals(ProtectionTracker.Action.NONE, tracker.onVerdict(NETWORK_B, ProtectionTracker.Verdict.UNPROTECTED));
+        assertEquals(ProtectionTracker.Action.CLEAR, tracker.onVerdict(NETWORK_B, ProtectionTracker.Verdict.PROTECTED));
+    }
+
+    @Test
+    public void neverProtectedDeviceIsLeftAlone() {
+        ProtectionTracker tracker = new ProtectionTracker(false, ProtectionTracker.NO_NETWORK, 0);
+        assertEquals(ProtectionTracker.Action.NONE, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNPROTECTED));
+        assertEquals(ProtectionTracker.Action.NONE, tracker.onVerdict(NETWORK_A, ProtectionTracker.Verdict.UNKNOWN));
+    }
+
+    private ProbeBudget newBudget(long[] restoredGrants) {
+        return new ProbeBudget(ProtectionWatchdog.MAX_PROBES_PER_HOUR, HOUR_MS, () -> now, restoredGrants);
+    }
+
+    private static void assertProbesPerHourAtMost(List<Long> grants, int max) {
+        for (int i = 0; i < grants.size(); i++) {
+            int inWindow = 0;
+            for (int j = i; j < grants.size() && grants.get(j) - grants.get(i) < HOUR_MS; j++) {
+                inWindow++;
+            }
+            assertTrue("More than " + max + " probes within an hour", inWindow <= max);
+        }
+    }
+}